@@ -0,0 +1,280 @@
+import java.util.*;
+
+/**
+ * An admissible estimate: for each size class, the cheapest way to send distinct
+ * blocks of that size to its goal blocks, where sending a block costs its Manhattan
+ * distance to the goal block. A one-cell move changes one block's distance to any
+ * goal block by at most one, and the block serves at most one goal block, so the
+ * estimate drops by at most one per move. The assignment is found with the
+ * Hungarian method, and only for the size classes whose blocks moved since the
+ * last score.
+ *
+ * Size classes with more than MAX_MATCHED goal blocks (such as a tray full of 1x1
+ * goals) count the goal blocks that are not yet occupied instead, which a move
+ * also lowers by at most one.
+ *
+ * With blocking on, every block of a size that has no goal blocks but covers part
+ * of a goal block adds one more: it has to get out of the way, and it is never
+ * counted otherwise.
+ */
+public class AssignmentHeuristic implements Heuristic {
+
+	/**Size classes with more goal blocks than this are counted, not matched.**/
+	public static final int MAX_MATCHED = 16;
+
+	private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+	private final StateEncoder encoder;
+	private final int trayWidth;
+	private final boolean blocking;
+
+	/**Rows and columns of each class's goal blocks, or null if the class has none**/
+	private final int[][] goalRows;
+	private final int[][] goalCols;
+	/**Sorted goal codes of the classes that are counted, null for the others**/
+	private final int[][] goalCodes;
+	/**Prefix sums of the cells covered by goal blocks, (length + 1) x (width + 1)**/
+	private final int[] goalCover;
+
+	/**Codes of the blocks of each matched class**/
+	private final int[][] blockCodes;
+	private final int[] classCost;
+	private final boolean[] dirty;
+	private int blockers;
+
+	/**Scratch space of the Hungarian method**/
+	private int[] u;
+	private int[] v;
+	private int[] match;
+	private int[] way;
+	private int[] slack;
+	private boolean[] used;
+
+	/**
+	 * @param puzzle	the puzzle whose goal to measure against.
+	 * @param blocking	whether to count blocks that are in the way of goal blocks.
+	 */
+	public AssignmentHeuristic(Puzzle puzzle, boolean blocking) {
+		encoder = puzzle.getEncoder();
+		trayWidth = puzzle.getWidth();
+		this.blocking = blocking;
+		int classes = encoder.classCount();
+		ArrayList<TreeSet<Integer>> goals = new ArrayList<TreeSet<Integer>>();
+		for (int c = 0; c < classes; c++) {
+			goals.add(new TreeSet<Integer>());
+		}
+		goalCover = new int[(puzzle.getLength() + 1) * (trayWidth + 1)];
+		for (int[] goalBlock : puzzle.getGoal()) {
+			if (puzzle.fits(goalBlock)) {
+				int c = encoder.sizeClass(goalBlock[0], goalBlock[1]);
+				goals.get(c).add(encoder.code(c, goalBlock[2], goalBlock[3]));
+				for (int i = goalBlock[2]; i < goalBlock[2] + goalBlock[0]; i++) {
+					for (int j = goalBlock[3]; j < goalBlock[3] + goalBlock[1]; j++) {
+						goalCover[(i + 1) * (trayWidth + 1) + j + 1] = 1;
+					}
+				}
+			}
+		}
+		for (int i = 1; i <= puzzle.getLength(); i++) {
+			for (int j = 1; j <= trayWidth; j++) {
+				goalCover[i * (trayWidth + 1) + j] += goalCover[(i - 1) * (trayWidth + 1) + j]
+						+ goalCover[i * (trayWidth + 1) + j - 1] - goalCover[(i - 1) * (trayWidth + 1) + j - 1];
+			}
+		}
+		goalRows = new int[classes][];
+		goalCols = new int[classes][];
+		goalCodes = new int[classes][];
+		blockCodes = new int[classes][];
+		classCost = new int[classes];
+		dirty = new boolean[classes];
+		for (int c = 0; c < classes; c++) {
+			TreeSet<Integer> classGoals = goals.get(c);
+			if (classGoals.isEmpty()) {
+				continue;
+			}
+			int[] codes = new int[classGoals.size()];
+			int k = 0;
+			for (int code : classGoals) {
+				codes[k++] = code;
+			}
+			if (codes.length > MAX_MATCHED) {
+				goalCodes[c] = codes;
+			} else {
+				goalRows[c] = new int[codes.length];
+				goalCols[c] = new int[codes.length];
+				for (int g = 0; g < codes.length; g++) {
+					goalRows[c][g] = encoder.rowOf(codes[g]);
+					goalCols[c][g] = encoder.colOf(codes[g]);
+				}
+			}
+		}
+	}
+
+	private AssignmentHeuristic(AssignmentHeuristic other) {
+		encoder = other.encoder;
+		trayWidth = other.trayWidth;
+		blocking = other.blocking;
+		goalRows = other.goalRows;
+		goalCols = other.goalCols;
+		goalCodes = other.goalCodes;
+		goalCover = other.goalCover;
+		blockCodes = new int[other.blockCodes.length][];
+		for (int c = 0; c < blockCodes.length; c++) {
+			if (other.blockCodes[c] != null) {
+				blockCodes[c] = other.blockCodes[c].clone();
+			}
+		}
+		classCost = other.classCost.clone();
+		dirty = other.dirty.clone();
+		blockers = other.blockers;
+	}
+
+	public void reset(int[] codes) {
+		int[] perClass = new int[blockCodes.length];
+		for (int code : codes) {
+			perClass[encoder.classOf(code)]++;
+		}
+		for (int c = 0; c < blockCodes.length; c++) {
+			blockCodes[c] = goalRows[c] == null ? null : new int[perClass[c]];
+			perClass[c] = 0;
+			classCost[c] = goalCodes[c] == null ? 0 : goalCodes[c].length;
+			dirty[c] = goalRows[c] != null;
+		}
+		blockers = 0;
+		for (int code : codes) {
+			int c = encoder.classOf(code);
+			if (goalRows[c] != null) {
+				blockCodes[c][perClass[c]++] = code;
+			} else if (goalCodes[c] != null) {
+				if (Arrays.binarySearch(goalCodes[c], code) >= 0) {
+					classCost[c]--;
+				}
+			} else if (blocking && inTheWay(code)) {
+				blockers++;
+			}
+		}
+	}
+
+	public void moved(int oldCode, int newCode) {
+		int c = encoder.classOf(oldCode);
+		if (goalRows[c] != null) {
+			int[] codes = blockCodes[c];
+			for (int i = 0; i < codes.length; i++) {
+				if (codes[i] == oldCode) {
+					codes[i] = newCode;
+					break;
+				}
+			}
+			dirty[c] = true;
+		} else if (goalCodes[c] != null) {
+			if (Arrays.binarySearch(goalCodes[c], oldCode) >= 0) {
+				classCost[c]++;
+			}
+			if (Arrays.binarySearch(goalCodes[c], newCode) >= 0) {
+				classCost[c]--;
+			}
+		} else if (blocking) {
+			blockers += (inTheWay(newCode) ? 1 : 0) - (inTheWay(oldCode) ? 1 : 0);
+		}
+	}
+
+	public int score() {
+		int score = blockers;
+		for (int c = 0; c < classCost.length; c++) {
+			if (dirty[c]) {
+				classCost[c] = assign(c);
+				dirty[c] = false;
+			}
+			score += classCost[c];
+		}
+		return score;
+	}
+
+	public Heuristic copy() {
+		return new AssignmentHeuristic(this);
+	}
+
+	/**
+	 * Returns true if the block with this code covers part of a goal block.
+	 */
+	private boolean inTheWay(int code) {
+		int c = encoder.classOf(code);
+		int top = encoder.rowOf(code);
+		int left = encoder.colOf(code);
+		int bottom = top + encoder.classLength(c);
+		int right = left + encoder.classWidth(c);
+		int stride = trayWidth + 1;
+		return goalCover[bottom * stride + right] - goalCover[top * stride + right]
+				- goalCover[bottom * stride + left] + goalCover[top * stride + left] > 0;
+	}
+
+	/**
+	 * Returns the cost of the cheapest assignment of distinct blocks to the goal
+	 * blocks of class c, by the Hungarian method with goal blocks as rows and
+	 * blocks as columns. If there are fewer blocks than goal blocks the goal
+	 * cannot be reached, and the count of goal blocks is returned.
+	 */
+	private int assign(int c) {
+		int[] rows = goalRows[c];
+		int[] cols = goalCols[c];
+		int[] codes = blockCodes[c];
+		int k = rows.length;
+		int n = codes.length;
+		if (n < k) {
+			return k;
+		}
+		if (u == null || u.length < k + 1 || v.length < n + 1) {
+			u = new int[Math.max(k + 1, u == null ? 0 : u.length)];
+			v = new int[Math.max(n + 1, v == null ? 0 : v.length)];
+			match = new int[v.length];
+			way = new int[v.length];
+			slack = new int[v.length];
+			used = new boolean[v.length];
+		}
+		Arrays.fill(u, 0, k + 1, 0);
+		Arrays.fill(v, 0, n + 1, 0);
+		Arrays.fill(match, 0, n + 1, 0);
+		for (int i = 1; i <= k; i++) {
+			match[0] = i;
+			int j0 = 0;
+			Arrays.fill(slack, 0, n + 1, INFINITY);
+			Arrays.fill(used, 0, n + 1, false);
+			do {
+				used[j0] = true;
+				int i0 = match[j0];
+				int delta = INFINITY;
+				int j1 = 0;
+				for (int j = 1; j <= n; j++) {
+					if (!used[j]) {
+						int cost = Math.abs(encoder.rowOf(codes[j - 1]) - rows[i0 - 1])
+								+ Math.abs(encoder.colOf(codes[j - 1]) - cols[i0 - 1]);
+						int reduced = cost - u[i0] - v[j];
+						if (reduced < slack[j]) {
+							slack[j] = reduced;
+							way[j] = j0;
+						}
+						if (slack[j] < delta) {
+							delta = slack[j];
+							j1 = j;
+						}
+					}
+				}
+				for (int j = 0; j <= n; j++) {
+					if (used[j]) {
+						u[match[j]] += delta;
+						v[j] -= delta;
+					} else {
+						slack[j] -= delta;
+					}
+				}
+				j0 = j1;
+			} while (match[j0] != 0);
+			do {
+				int j1 = way[j0];
+				match[j0] = match[j1];
+				j0 = j1;
+			} while (j0 != 0);
+		}
+		return -v[0];
+	}
+}
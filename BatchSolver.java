@@ -0,0 +1,220 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Solves a whole suite of puzzles in one JVM, so that the suite pays for JVM
+ * startup and warm-up once instead of once per puzzle. Every solution is checked
+ * in-process by replaying it on a fresh tray, and one result line is written per
+ * puzzle:
+ *
+ * 		initial	goal	result	moves	ms	states
+ *
+ * separated by tabs, where result is one of verified, wrong (the solution did not
+ * check out), unsolvable, missing (a file does not exist) or error (followed by
+ * the message), moves is the number of one-cell moves ("-" if there is no
+ * solution), ms is the time the search took and states the number of
+ * configurations it visited.
+ *
+ * The manifest has the layout of hard.puzzles.readme: one puzzle per line, the
+ * initial configuration file and then the goal file, both relative to the
+ * manifest's directory, and anything after them is a comment. Lines that are
+ * indented or start with '#' or '-' are ignored, as are lines where neither file
+ * exists (headings). A line with one file only, as in all.hards, pairs it with
+ * the goal file of the same name plus ".goal".
+ *
+ * As a daemon the solver listens on a local port instead. A client sends puzzles
+ * as "initial goal" lines, relative to the daemon's directory, and for each one
+ * gets back the solution's moves followed by its result line prefixed with "# ".
+ * An empty line or end of input closes the connection. Connections are solved at
+ * the same time, so a daemon cannot checkpoint (-k): every search would share the
+ * one file.
+ */
+public class BatchSolver {
+
+	public static final String VERIFIED = "verified";
+	public static final String WRONG = "wrong";
+	public static final String UNSOLVABLE = "unsolvable";
+	public static final String MISSING = "missing";
+	public static final String ERROR = "error";
+
+	private final SolverOptions options;
+
+	/**
+	 * @param options	the options every puzzle is solved with.
+	 */
+	public BatchSolver(SolverOptions options) {
+		this.options = options;
+	}
+
+	/**
+	 * Solves every puzzle of a manifest in order, printing a result line for each
+	 * and a summary at the end.
+	 *
+	 * @param manifest	the manifest.
+	 * @param dir		the directory the file names are relative to, or null for
+	 * 					the current directory.
+	 * @param out		where to print the results.
+	 * @return			true if every puzzle was either verified or found unsolvable.
+	 * @throws IOException	if the manifest cannot be read.
+	 */
+	public boolean run(BufferedReader manifest, File dir, PrintStream out) throws IOException {
+		Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		for (String result : new String[] {VERIFIED, UNSOLVABLE, WRONG, MISSING, ERROR}) {
+			counts.put(result, 0);
+		}
+		long start = System.nanoTime();
+		out.println("#initial\tgoal\tresult\tmoves\tms\tstates");
+		String line;
+		while ((line = manifest.readLine()) != null) {
+			String[] puzzle = puzzleOf(line, dir);
+			if (puzzle == null) {
+				continue;
+			}
+			String[] result = solve(puzzle[0], puzzle[1], null);
+			counts.put(result[2], counts.get(result[2]) + 1);
+			out.println(join(result));
+			out.flush();
+		}
+		StringBuilder summary = new StringBuilder("#");
+		for (Map.Entry<String, Integer> count : counts.entrySet()) {
+			summary.append(' ').append(count.getValue()).append(' ').append(count.getKey()).append(',');
+		}
+		summary.append(" in ").append((System.nanoTime() - start) / 1000000).append("ms");
+		out.println(summary);
+		return counts.get(WRONG) + counts.get(MISSING) + counts.get(ERROR) == 0;
+	}
+
+	/**
+	 * Solves and verifies one puzzle.
+	 *
+	 * @param initialConfig	the initial configuration file.
+	 * @param finalConfig	the goal file.
+	 * @param moves			where to print the solution's moves, or null.
+	 * @return				the fields of the puzzle's result line.
+	 */
+	public String[] solve(String initialConfig, String finalConfig, PrintStream moves) {
+		if (!new File(initialConfig).isFile() || !new File(finalConfig).isFile()) {
+			return new String[] {initialConfig, finalConfig, MISSING, "-", "0", "0"};
+		}
+		long start = System.nanoTime();
+		try {
+			Solution solution = Solver.solve(initialConfig, finalConfig, options);
+			String ms = Long.toString((System.nanoTime() - start) / 1000000);
+			String states = Long.toString(solution.getExplored());
+			if (!solution.isSolved()) {
+				return new String[] {initialConfig, finalConfig, UNSOLVABLE, "-", ms, states};
+			}
+			boolean correct = solution.verify(new Tray(initialConfig, finalConfig, options));
+			if (moves != null) {
+				solution.print(moves);
+			}
+			return new String[] {initialConfig, finalConfig, correct ? VERIFIED : WRONG,
+					Integer.toString(solution.getStepCount()), ms, states};
+		} catch (RuntimeException e) {
+			return error(initialConfig, finalConfig, start, e);
+		} catch (OutOfMemoryError e) {
+			return error(initialConfig, finalConfig, start, e);
+		}
+	}
+
+	/**
+	 * Answers puzzles sent to a port on the loopback interface until the JVM is
+	 * stopped. Each connection is served on its own thread.
+	 *
+	 * @param port	the port to listen on.
+	 * @throws IOException	if the port cannot be opened.
+	 * @throws IllegalArgumentException	if the options checkpoint searches.
+	 */
+	public void serve(int port) throws IOException {
+		options.checkConcurrent("A daemon");
+		ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		ExecutorService pool = Executors.newCachedThreadPool();
+		try {
+			while (true) {
+				final Socket client = server.accept();
+				pool.execute(new Runnable() {
+					public void run() {
+						try {
+							answer(client);
+						} catch (IOException e) {
+							System.err.println("Connection lost: " + e.getMessage());
+						} finally {
+							try {
+								client.close();
+							} catch (IOException e) {
+							}
+						}
+					}
+				});
+			}
+		} finally {
+			pool.shutdownNow();
+			server.close();
+		}
+	}
+
+	/**
+	 * Solves the puzzles sent over one connection.
+	 */
+	private void answer(Socket client) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+		PrintStream out = new PrintStream(new BufferedOutputStream(client.getOutputStream()));
+		String line;
+		while ((line = in.readLine()) != null && line.trim().length() > 0) {
+			String[] tokens = line.trim().split("\\s+");
+			if (tokens.length != 2) {
+				out.println("# " + line.trim() + "\t-\t" + ERROR + "\t-\t0\t0\tExpected: initial goal");
+			} else {
+				out.println("# " + join(solve(tokens[0], tokens[1], out)));
+			}
+			out.flush();
+			if (out.checkError()) {
+				throw new IOException("Could not write to " + client.getRemoteSocketAddress());
+			}
+		}
+	}
+
+	/**
+	 * Returns the {initial, goal} files of a manifest line, or null if the line
+	 * is not a puzzle.
+	 *
+	 * @param line	the line.
+	 * @param dir	the directory the file names are relative to, or null.
+	 */
+	static String[] puzzleOf(String line, File dir) {
+		if (line.length() == 0 || Character.isWhitespace(line.charAt(0))
+				|| line.startsWith("#") || line.startsWith("-")) {
+			return null;
+		}
+		String[] tokens = line.trim().split("\\s+");
+		File initial = resolve(dir, tokens[0]);
+		File goal = resolve(dir, tokens.length > 1 ? tokens[1] : tokens[0] + ".goal");
+		if (!initial.isFile() && !goal.isFile()) {
+			return null;
+		}
+		return new String[] {initial.getPath(), goal.getPath()};
+	}
+
+	private static File resolve(File dir, String name) {
+		File file = new File(name);
+		if (dir == null || file.isAbsolute()) {
+			return file;
+		}
+		return new File(dir, name);
+	}
+
+	private static String[] error(String initialConfig, String finalConfig, long start, Throwable e) {
+		return new String[] {initialConfig, finalConfig, ERROR, "-",
+				Long.toString((System.nanoTime() - start) / 1000000), "0", String.valueOf(e)};
+	}
+
+	private static String join(String[] fields) {
+		StringBuilder line = new StringBuilder(fields[0]);
+		for (int i = 1; i < fields.length; i++) {
+			line.append('\t').append(fields[i]);
+		}
+		return line.toString();
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * Expands the configuration with the lowest gWeight * g + hWeight * h first, where
+ * g is the number of moves made so far and h is Tray.setScore. With equal weights
+ * this is A*, with a larger hWeight it is weighted A*, and with gWeight 0 it is
+ * greedy best-first. A* puts a configuration back on the fringe whenever it finds
+ * a shorter way to it, so its solutions are shortest as long as the score never
+ * overestimates (see Heuristic); the others keep the first way they find.
+ *
+ * Priorities are small integers, so the fringe is a BucketQueue of node indices;
+ * among configurations of equal priority the one reached last is expanded first.
+ * Configurations the score marks as dead ends are never put on the fringe.
+ */
+public class BestFirstSearch extends FrontierSearch {
+
+	private final BucketQueue fringe = new BucketQueue();
+	private final int gWeight;
+	private final int hWeight;
+
+	/**
+	 * @param gWeight	the weight of the moves made so far.
+	 * @param hWeight	the weight of the score.
+	 */
+	public BestFirstSearch(int gWeight, int hWeight) {
+		if (gWeight < 0 || hWeight < 0) {
+			throw new IllegalArgumentException("Weights must not be negative.");
+		}
+		this.gWeight = gWeight;
+		this.hWeight = hWeight;
+	}
+
+	protected int priority(int depth, Tray tray) {
+		int score = tray.setScore();
+		if (score >= PatternDatabase.DEAD_END) {
+			return -1;
+		}
+		return gWeight * depth + hWeight * score;
+	}
+
+	protected int[] getSettings() {
+		return new int[] {gWeight, hWeight};
+	}
+
+	protected boolean reopens() {
+		return gWeight > 0 && gWeight == hWeight;
+	}
+
+	protected void push(int node, int priority) {
+		fringe.push(node, priority);
+	}
+
+	protected int pop() {
+		return fringe.pop();
+	}
+
+	protected boolean isEmpty() {
+		return fringe.isEmpty();
+	}
+
+	protected long[] fringe() {
+		return fringe.toArray();
+	}
+}
@@ -0,0 +1,128 @@
+import java.util.*;
+
+/**
+ * Meet-in-the-middle breadth-first search for goals that place every block. Such
+ * a goal is a single configuration, and since every move can be undone the same
+ * move generator searches backwards from it. Both searches share one visited set
+ * that remembers which side reached each configuration; layers are expanded from
+ * whichever side has the smaller frontier, and the path is stitched together as
+ * soon as one side reaches a configuration the other side already has.
+ *
+ * A solution of n moves is found after expanding about twice the configurations
+ * within n/2 moves of either end instead of all of those within n moves of the
+ * start. It is shortest to within a move or two, since the search stops at the
+ * first meeting rather than finishing the layer.
+ *
+ * If the goal only constrains some blocks the search falls back to another strategy.
+ */
+public class BidirectionalSearch implements SearchStrategy {
+
+	private static final byte FORWARD = 0;
+	private static final byte BACKWARD = 1;
+
+	private final SearchStrategy fallback;
+	private VisitedSet visited;
+	private NodeArena nodes;
+	private byte[] sides;
+
+	/**
+	 * @param fallback	the strategy to use when the goal is not a single configuration.
+	 */
+	public BidirectionalSearch(SearchStrategy fallback) {
+		this.fallback = fallback;
+	}
+
+	public long[] search(Tray tray) {
+		long[] key = new long[tray.keyLength()];
+		if (!tray.encodeGoal(key)) {
+			visited = null;
+			return fallback.search(tray);
+		}
+		visited = new VisitedSet(tray.keyLength());
+		nodes = new NodeArena();
+		sides = new byte[1024];
+		// each layer is the range of nodes added while expanding the layer before
+		int[] backward = {0, 1};
+		record(visited.add(key, tray.hashOf(key)), -1, 0, BACKWARD);
+		tray.encode(key);
+		int start = visited.add(key, tray.hash());
+		if (start < 0) {
+			return new long[0];
+		}
+		int[] forward = {start, start + 1};
+		record(start, -1, 0, FORWARD);
+		MoveList moves = new MoveList();
+		SearchStats stats = tray.getPuzzle().getStats();
+		long expanded = 0;
+		long generated = 0;
+		long duplicates = 0;
+		while (forward[0] < forward[1] && backward[0] < backward[1]) {
+			byte side = forward[1] - forward[0] <= backward[1] - backward[0] ? FORWARD : BACKWARD;
+			int[] layer = side == FORWARD ? forward : backward;
+			int next = nodes.size();
+			for (int node = layer[0]; node < layer[1]; node++) {
+				if ((expanded++ & 1023) == 0) {
+					stats.report(expanded, generated, duplicates, nodes.size() - expanded);
+				}
+				visited.getKey(node, key);
+				tray.load(key);
+				tray.getMoves(moves);
+				for (int i = 0; i < moves.size(); i++) {
+					long move = moves.get(i);
+					tray.makeMove(move);
+					tray.encode(key);
+					int state = visited.add(key, tray.hash());
+					tray.undoMove(move);
+					generated++;
+					if (state >= 0) {
+						record(state, node, move, side);
+					} else if (sides[-state - 1] == side) {
+						duplicates++;
+					} else {
+						int other = -state - 1;
+						stats.report(expanded, generated, duplicates, nodes.size() - expanded);
+						if (side == FORWARD) {
+							return stitch(node, move, other);
+						} else {
+							return stitch(other, Move.reverse(move), node);
+						}
+					}
+				}
+			}
+			layer[0] = next;
+			layer[1] = nodes.size();
+		}
+		stats.report(expanded, generated, duplicates, 0);
+		return null;
+	}
+
+	public long getExplored() {
+		return visited == null ? fallback.getExplored() : visited.size();
+	}
+
+	/**
+	 * Adds the node of a new configuration, on the given side.
+	 */
+	private void record(int state, int parent, long move, byte side) {
+		nodes.add(parent, move, 0);
+		if (state >= sides.length) {
+			sides = Arrays.copyOf(sides, sides.length * 2);
+		}
+		sides[state] = side;
+	}
+
+	/**
+	 * Returns the moves to the forward node, then the move joining the two
+	 * searches, then the backward node's moves taken back in reverse order.
+	 */
+	private long[] stitch(int forward, long move, int backward) {
+		long[] head = nodes.pathTo(forward);
+		long[] result = Arrays.copyOf(head, head.length + 1 + nodes.getDepth(backward));
+		int i = head.length;
+		result[i++] = move;
+		for (int node = backward; nodes.getParent(node) >= 0; node = nodes.getParent(node)) {
+			result[i++] = Move.reverse(nodes.getMove(node));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * Expands configurations in the order they were reached, so the solution found
+ * uses as few moves as possible.
+ */
+public class BreadthFirstSearch extends FrontierSearch {
+
+	/**A circular queue of node indices**/
+	private int[] fringe = new int[1024];
+	private int head = 0;
+	private int count = 0;
+
+	protected int priority(int depth, Tray tray) {
+		return depth;
+	}
+
+	protected void push(int node, int priority) {
+		if (count == fringe.length) {
+			int[] bigger = new int[fringe.length * 2];
+			System.arraycopy(fringe, head, bigger, 0, fringe.length - head);
+			System.arraycopy(fringe, 0, bigger, fringe.length - head, head);
+			fringe = bigger;
+			head = 0;
+		}
+		fringe[(head + count++) & (fringe.length - 1)] = node;
+	}
+
+	protected int pop() {
+		int node = fringe[head];
+		head = (head + 1) & (fringe.length - 1);
+		count--;
+		return node;
+	}
+
+	protected boolean isEmpty() {
+		return count == 0;
+	}
+
+	protected long[] fringe() {
+		long[] entries = new long[count];
+		for (int i = 0; i < count; i++) {
+			int node = fringe[(head + i) & (fringe.length - 1)];
+			entries[i] = (long) nodes.getDepth(node) << 32 | node;
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,92 @@
+import java.util.*;
+
+/**
+ * A priority queue of ints (node indices) with small non-negative int priorities:
+ * one stack per priority, and the lowest priority that may be non-empty. Pushing
+ * is O(1); popping is O(1) plus the empty priorities skipped over, which the
+ * searches keep few since priorities change by little from parent to child. Items
+ * of equal priority come out last in, first out, so a best-first search keeps
+ * going down the branch it is on among equally good configurations.
+ *
+ * Stacks are arrays that double when full, so pushes allocate nothing once the
+ * queue has grown to its working size.
+ */
+public class BucketQueue {
+
+	private int[][] buckets = new int[64][];
+	private int[] counts = new int[64];
+	/**No bucket below this one has items**/
+	private int lowest = 0;
+	private int size = 0;
+
+	/**
+	 * Adds an item.
+	 *
+	 * @param item		the item.
+	 * @param priority	its priority, at least 0; lower priorities come out first.
+	 */
+	public void push(int item, int priority) {
+		if (priority < 0) {
+			throw new IllegalArgumentException("Negative priority: " + priority);
+		}
+		if (priority >= buckets.length) {
+			int length = buckets.length;
+			while (length <= priority) {
+				length *= 2;
+			}
+			buckets = Arrays.copyOf(buckets, length);
+			counts = Arrays.copyOf(counts, length);
+		}
+		int[] bucket = buckets[priority];
+		int count = counts[priority];
+		if (bucket == null || count == bucket.length) {
+			bucket = bucket == null ? new int[16] : Arrays.copyOf(bucket, count * 2);
+			buckets[priority] = bucket;
+		}
+		bucket[count] = item;
+		counts[priority] = count + 1;
+		if (priority < lowest) {
+			lowest = priority;
+		}
+		size++;
+	}
+
+	/**
+	 * Removes and returns the item pushed last among those of the lowest priority.
+	 *
+	 * @throws IllegalStateException	if the queue is empty.
+	 */
+	public int pop() {
+		if (size == 0) {
+			throw new IllegalStateException("The queue is empty.");
+		}
+		while (counts[lowest] == 0) {
+			lowest++;
+		}
+		size--;
+		return buckets[lowest][--counts[lowest]];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns every item as priority << 32 | item, in an order that pushing them
+	 * into an empty queue rebuilds this one.
+	 */
+	public long[] toArray() {
+		long[] entries = new long[size];
+		int n = 0;
+		for (int priority = lowest; n < size; priority++) {
+			for (int i = 0; i < counts[priority]; i++) {
+				entries[n++] = (long) priority << 32 | buckets[priority][i];
+			}
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,260 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Saves a FrontierSearch now and then, so that a search killed by a time limit or
+ * a crash can pick up where it was when it is run again, on this machine or another.
+ *
+ * A checkpoint holds the visited set, the search tree, the fringe and how far the
+ * search had got, gzipped. The search thread only takes a snapshot (entries of the
+ * visited set never change once added, and the NodeArena copies a page before
+ * changing it under a snapshot); a background thread writes it to <file>.tmp,
+ * which is then renamed over the checkpoint, so a checkpoint is never half
+ * written. A save that comes due while the last one is still being written is
+ * skipped.
+ *
+ * A checkpoint records the puzzle, the strategy with its weights, the score and the
+ * move mode it was made with, and is only resumed by the same search of the same
+ * puzzle. It is deleted when the search ends.
+ */
+public class Checkpoint {
+
+	/**The default time between saves, in milliseconds.**/
+	public static final long DEFAULT_INTERVAL = 30000;
+
+	private static final long MAGIC = 0x434B505452415932L;
+
+	private final File file;
+	private final long interval;
+	/**The puzzle, strategy and settings the checkpoint belongs to**/
+	private final byte[] signature;
+	private final ExecutorService writer;
+	private Future<?> pending;
+	private long lastSave;
+
+	/**
+	 * @param file		the checkpoint file.
+	 * @param interval	the time between saves, in milliseconds.
+	 * @param tray		the tray being searched, in its initial configuration.
+	 * @param strategy	the search, which only resumes its own checkpoints.
+	 */
+	public Checkpoint(File file, long interval, Tray tray, FrontierSearch strategy) {
+		this.file = file;
+		this.interval = interval;
+		SolverOptions options = tray.getPuzzle().getOptions();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeUTF(strategy.getClass().getName());
+			int[] settings = strategy.getSettings();
+			out.writeInt(settings.length);
+			for (int value : settings) {
+				out.writeInt(value);
+			}
+			out.writeInt(options.getHeuristic());
+			out.writeInt(options.getMoveMode());
+			out.writeBoolean(options.getFold());
+			long[] key = new long[tray.keyLength()];
+			tray.encode(key);
+			out.writeInt(key.length);
+			for (long value : key) {
+				out.writeLong(value);
+			}
+			out.writeInt(tray.getPuzzle().getGoal().size());
+			for (int[] goalBlock : tray.getPuzzle().getGoal()) {
+				for (int value : goalBlock) {
+					out.writeInt(value);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		signature = bytes.toByteArray();
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "checkpoint");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		lastSave = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns true if it is time to save and the last save is done.
+	 */
+	public boolean isDue() {
+		if (pending != null) {
+			if (!pending.isDone()) {
+				return false;
+			}
+			try {
+				pending.get();
+			} catch (ExecutionException e) {
+				System.err.println("Cannot write " + file + ": " + e.getCause().getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			pending = null;
+		}
+		return System.currentTimeMillis() - lastSave >= interval;
+	}
+
+	/**
+	 * Starts writing a checkpoint in the background.
+	 *
+	 * @param visited	a snapshot of the search's visited set.
+	 * @param nodes		a snapshot of the search's nodes.
+	 * @param fringe	the fringe as priority << 32 | node, in the order to push it back in.
+	 * @param expanded	the number of nodes the search has expanded.
+	 * @param elapsed	the milliseconds the search has run, counting earlier runs.
+	 */
+	public void save(final VisitedSet.Snapshot visited, final NodeArena.Snapshot nodes, final long[] fringe,
+			final long expanded, final long elapsed) {
+		lastSave = System.currentTimeMillis();
+		pending = writer.submit(new Callable<Void>() {
+			public Void call() throws IOException {
+				write(visited, nodes, fringe, expanded, elapsed);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Reads the checkpoint, if there is one.
+	 *
+	 * @return	the saved search, or null if there is no checkpoint file.
+	 * @throws IllegalStateException	if the file cannot be read or belongs to
+	 * 									another puzzle or search.
+	 */
+	public State load() {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+			try {
+				if (in.readLong() != MAGIC) {
+					throw new IllegalStateException(file + " is not a checkpoint.");
+				}
+				byte[] saved = new byte[in.readInt()];
+				if (saved.length != signature.length) {
+					throw new IllegalStateException(file + " is not a checkpoint of this search.");
+				}
+				in.readFully(saved);
+				if (!Arrays.equals(saved, signature)) {
+					throw new IllegalStateException(file + " is not a checkpoint of this search.");
+				}
+				State state = new State();
+				state.expanded = in.readLong();
+				state.elapsed = in.readLong();
+				state.visited = VisitedSet.read(in);
+				state.nodes = NodeArena.read(in);
+				if (state.nodes.size() != state.visited.size()) {
+					throw new IOException("the search tree does not match the visited set");
+				}
+				state.fringe = new long[in.readInt()];
+				for (int i = 0; i < state.fringe.length; i++) {
+					state.fringe[i] = in.readLong();
+				}
+				return state;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Stops saving and deletes the checkpoint, for a search that has ended.
+	 */
+	public void finish() {
+		close();
+		file.delete();
+		new File(file.getPath() + ".tmp").delete();
+	}
+
+	/**
+	 * Stops saving, waiting for a save in progress, and keeps the checkpoint.
+	 */
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes a checkpoint: the signature, the counters, the visited set, the nodes
+	 * and the fringe's priorities and nodes.
+	 */
+	private void write(VisitedSet.Snapshot visited, NodeArena.Snapshot nodes, long[] fringe, long expanded,
+			long elapsed) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))));
+		try {
+			out.writeLong(MAGIC);
+			out.writeInt(signature.length);
+			out.write(signature);
+			out.writeLong(expanded);
+			out.writeLong(elapsed);
+			visited.write(out);
+			nodes.write(out);
+			out.writeInt(fringe.length);
+			for (long entry : fringe) {
+				out.writeLong(entry);
+			}
+		} catch (IOException e) {
+			out.close();
+			temp.delete();
+			throw e;
+		}
+		out.close();
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("Cannot replace " + file);
+			}
+		}
+	}
+
+	/**
+	 * A search as it was saved.
+	 */
+	public static class State {
+		VisitedSet visited;
+		NodeArena nodes;
+		long[] fringe;
+		long expanded;
+		long elapsed;
+
+		public VisitedSet getVisited() {
+			return visited;
+		}
+
+		public NodeArena getNodes() {
+			return nodes;
+		}
+
+		/**
+		 * Returns the fringe as priority << 32 | node.
+		 */
+		public long[] getFringe() {
+			return fringe;
+		}
+
+		public long getExpanded() {
+			return expanded;
+		}
+
+		public long getElapsed() {
+			return elapsed;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * A visited set that many threads can add to at once. The entries are split over
+ * a power-of-two number of independent VisitedSets (stripes) chosen by the key's
+ * hash, and each stripe is locked separately, so threads only wait for each other
+ * when they touch the same stripe at the same moment.
+ *
+ * An entry's index combines its index within the stripe and the stripe number,
+ * so indices are unique but not consecutive.
+ */
+public class ConcurrentVisitedSet {
+
+	private final VisitedSet[] stripes;
+	private final int stripeBits;
+
+	/**
+	 * @param keyLength		the number of longs in every key.
+	 * @param concurrency	roughly how many threads will add at once.
+	 */
+	public ConcurrentVisitedSet(int keyLength, int concurrency) {
+		int bits = 0;
+		while ((1 << bits) < concurrency * 8 && bits < 10) {
+			bits++;
+		}
+		stripeBits = bits;
+		stripes = new VisitedSet[1 << bits];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new VisitedSet(keyLength);
+		}
+	}
+
+	/**
+	 * Adds a key to the set.
+	 * @param key	the key.
+	 * @param hash	the hash of the key.
+	 * @return		the index of the new entry, or -(index + 1) of the existing
+	 * 				entry if the key was already present.
+	 */
+	public int add(long[] key, long hash) {
+		int stripe = stripeOf(hash);
+		VisitedSet set = stripes[stripe];
+		int local;
+		synchronized (set) {
+			local = set.add(key, hash);
+		}
+		if (local >= 0) {
+			return globalIndex(local, stripe);
+		}
+		return -globalIndex(-local - 1, stripe) - 1;
+	}
+
+	/**
+	 * Copies the key of an entry into dst.
+	 */
+	public void getKey(int index, long[] dst) {
+		VisitedSet set = stripes[index & ((1 << stripeBits) - 1)];
+		synchronized (set) {
+			set.getKey(index >>> stripeBits, dst);
+		}
+	}
+
+	/**
+	 * Returns the number of entries in the set.
+	 */
+	public int size() {
+		int size = 0;
+		for (VisitedSet set : stripes) {
+			synchronized (set) {
+				size += set.size();
+			}
+		}
+		return size;
+	}
+
+	private int stripeOf(long hash) {
+		return (int) (hash >>> (64 - stripeBits)) & ((1 << stripeBits) - 1);
+	}
+
+	private int globalIndex(int local, int stripe) {
+		if (local > (Integer.MAX_VALUE >>> stripeBits)) {
+			throw new IllegalStateException("Visited set is full.");
+		}
+		return (local << stripeBits) | stripe;
+	}
+}
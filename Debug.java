@@ -1,12 +1,11 @@
-
 public class Debug {
 	//
 	public final static int doDebug = 1;
 	public final static int doNothing = 0;
 	//T
-	public static int solverTime = doNothing;
+	public int solverTime = doNothing;
 	//M
-	public static int printMoves = doNothing;
+	public int printMoves = doNothing;
     //N
-    public static int ShowMoveNumber = doNothing;
-}
\ No newline at end of file
+    public int ShowMoveNumber = doNothing;
+}
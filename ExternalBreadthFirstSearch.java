@@ -0,0 +1,449 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * Breadth-first search that keeps its layers on disk instead of in a VisitedSet, for
+ * puzzles with more configurations than fit in memory. Moves can always be undone,
+ * so every configuration next to layer d is in layer d - 1, d or d + 1; layer d + 1
+ * is therefore what layer d generates, less duplicates and the configurations of
+ * layers d and d - 1. Duplicates are not looked for as configurations are
+ * generated but all at once per layer (delayed duplicate detection): successors are
+ * collected in memory, sorted and written out as runs of at most runRecords, and
+ * the runs are then merged with each other and with the two earlier layers, which
+ * are sorted too, into the next layer's file.
+ *
+ * Layers and runs store each configuration next to the move that reached it, coded
+ * against the configuration before it: the number of longs shared with it, the
+ * difference in the first long that is not, the remaining longs and the move, all
+ * as variable-length numbers. They are written through buffered streams and read
+ * back through memory maps. Every layer stays on disk until the search ends, so
+ * the path is rebuilt from the goal backwards: taking back a configuration's move
+ * gives its parent, whose own move is found by scanning the layer before.
+ *
+ * Like IterativeDeepeningSearch, it does not fold mirror images together.
+ */
+public class ExternalBreadthFirstSearch implements SearchStrategy {
+
+	/**The default number of configurations sorted in memory at a time.**/
+	public static final int RUN_RECORDS = 1 << 20;
+
+	/**The most longs of configurations held in memory at a time, however long each is.**/
+	private static final int RUN_LONGS = 1 << 23;
+
+	/**The most of a file mapped at once.**/
+	private static final int WINDOW = 1 << 26;
+
+	private final File base;
+	private final int runRecords;
+	private long explored;
+
+	/**
+	 * @param base			the directory to keep the layers in, or null for the
+	 * 						system's temporary directory. Each search uses a new
+	 * 						directory inside it and deletes it when done.
+	 * @param runRecords	the number of configurations to sort in memory at a time.
+	 */
+	public ExternalBreadthFirstSearch(File base, int runRecords) {
+		if (runRecords <= 0) {
+			throw new IllegalArgumentException("Runs need at least one configuration.");
+		}
+		this.base = base;
+		this.runRecords = runRecords;
+	}
+
+	public long[] search(Tray tray) {
+		explored = 1;
+		if (tray.equalsGoal()) {
+			return new long[0];
+		}
+		File dir;
+		try {
+			dir = File.createTempFile("search", "", base);
+			if (!dir.delete() || !dir.mkdir()) {
+				throw new IOException("Cannot create " + dir);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot keep the search on disk: " + e.getMessage(), e);
+		}
+		try {
+			return search(tray, dir);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot keep the search on disk: " + e.getMessage(), e);
+		} finally {
+			File[] files = dir.listFiles();
+			for (int i = 0; files != null && i < files.length; i++) {
+				files[i].delete();
+			}
+			dir.delete();
+		}
+	}
+
+	public long getExplored() {
+		return explored;
+	}
+
+	private long[] search(Tray tray, File dir) throws IOException {
+		int keyLength = tray.keyLength();
+		long[] key = new long[keyLength];
+		List<File> layers = new ArrayList<File>();
+		layers.add(new File(dir, "layer0"));
+		RunWriter root = new RunWriter(layers.get(0), keyLength);
+		tray.encode(key);
+		root.write(key, 0);
+		root.close();
+		Run buffer = new Run(keyLength, Math.max(1, Math.min(runRecords, RUN_LONGS / keyLength)));
+		MoveList moves = new MoveList();
+		Debug debug = tray.getPuzzle().getOptions().getDebug();
+		SearchStats stats = tray.getPuzzle().getStats();
+		long expanded = 0;
+		long generated = 0;
+		for (int depth = 0; ; depth++) {
+			// expand layer depth into sorted runs
+			List<File> runs = new ArrayList<File>();
+			RunReader layer = new RunReader(layers.get(depth), keyLength);
+			try {
+				while (layer.next()) {
+					expanded++;
+					tray.load(layer.key);
+					tray.getMoves(moves);
+					generated += moves.size();
+					for (int i = 0; i < moves.size(); i++) {
+						long move = moves.get(i);
+						//{Start Debugging!}
+						if (debug.printMoves == Debug.doDebug) {
+							System.out.println("{Debugging} Move " + Move.toString(move, tray.getWidth()));
+						}
+						//{End Debugging...}
+						tray.makeMove(move);
+						if (tray.equalsGoal()) {
+							tray.undoMove(move);
+							long[] path = pathTo(tray, layer.key, depth, layers);
+							path[depth] = move;
+							return path;
+						}
+						tray.encode(key);
+						tray.undoMove(move);
+						buffer.add(key, move);
+						if (buffer.isFull()) {
+							runs.add(buffer.flush(new File(dir, "run" + runs.size())));
+						}
+					}
+				}
+			} finally {
+				layer.close();
+			}
+			if (buffer.size() > 0) {
+				runs.add(buffer.flush(new File(dir, "run" + runs.size())));
+			}
+			// merge the runs into layer depth + 1, dropping what layers depth - 1 and depth hold
+			File next = new File(dir, "layer" + (depth + 1));
+			long count = merge(runs, layers.get(depth), depth > 0 ? layers.get(depth - 1) : null, next, keyLength);
+			for (File run : runs) {
+				run.delete();
+			}
+			explored += count;
+			stats.report(expanded, generated, generated - (explored - 1), count);
+			if (count == 0) {
+				return null;
+			}
+			layers.add(next);
+		}
+	}
+
+	/**
+	 * Merges sorted runs into one sorted layer, keeping one record of each
+	 * configuration and none of the configurations in the older layers.
+	 *
+	 * @return	the number of records written.
+	 */
+	private static long merge(List<File> runs, File current, File previous, File out, int keyLength)
+			throws IOException {
+		List<RunReader> readers = new ArrayList<RunReader>();
+		RunReader[] older = new RunReader[2];
+		RunWriter writer = new RunWriter(out, keyLength);
+		long count = 0;
+		try {
+			for (File run : runs) {
+				RunReader reader = new RunReader(run, keyLength);
+				readers.add(reader);
+				if (!reader.next()) {
+					reader.close();
+					readers.remove(readers.size() - 1);
+				}
+			}
+			older[0] = new RunReader(current, keyLength);
+			older[1] = previous == null ? null : new RunReader(previous, keyLength);
+			boolean[] more = {older[0].next(), older[1] != null && older[1].next()};
+			long[] last = new long[keyLength];
+			while (!readers.isEmpty()) {
+				RunReader smallest = readers.get(0);
+				for (int i = 1; i < readers.size(); i++) {
+					if (compare(readers.get(i).key, smallest.key) < 0) {
+						smallest = readers.get(i);
+					}
+				}
+				boolean keep = count == 0 || compare(smallest.key, last) != 0;
+				for (int k = 0; keep && k < older.length; k++) {
+					while (more[k] && compare(older[k].key, smallest.key) < 0) {
+						more[k] = older[k].next();
+					}
+					keep = !more[k] || compare(older[k].key, smallest.key) != 0;
+				}
+				if (keep) {
+					writer.write(smallest.key, smallest.move);
+					count++;
+					System.arraycopy(smallest.key, 0, last, 0, keyLength);
+				}
+				if (!smallest.next()) {
+					smallest.close();
+					readers.remove(smallest);
+				}
+			}
+		} finally {
+			writer.close();
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+			for (RunReader reader : older) {
+				if (reader != null) {
+					reader.close();
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a path of depth + 1 moves whose first depth moves lead to a
+	 * configuration of layer depth; the last move is left for the caller.
+	 *
+	 * @param tray	a board to replay on; its configuration is lost.
+	 * @param key	the configuration reached after depth moves.
+	 */
+	private static long[] pathTo(Tray tray, long[] key, int depth, List<File> layers) throws IOException {
+		long[] path = new long[depth + 1];
+		key = key.clone();
+		for (int d = depth; d > 0; d--) {
+			RunReader layer = new RunReader(layers.get(d), key.length);
+			try {
+				boolean found = false;
+				while (!found && layer.next()) {
+					found = compare(layer.key, key) == 0;
+				}
+				if (!found) {
+					throw new IllegalStateException("Configuration missing from layer " + d);
+				}
+				path[d - 1] = layer.move;
+			} finally {
+				layer.close();
+			}
+			tray.load(key);
+			tray.undoMove(path[d - 1]);
+			tray.encode(key);
+		}
+		return path;
+	}
+
+	private static int compare(long[] a, long[] b) {
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != b[i]) {
+				return a[i] < b[i] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Configurations and moves collected in memory until there are enough to sort
+	 * and write out as a run.
+	 */
+	private static class Run {
+		private final int keyLength;
+		private final long[] keys;
+		private final long[] moves;
+		private int[] order;
+		private int[] scratch;
+		private int size;
+
+		Run(int keyLength, int capacity) {
+			this.keyLength = keyLength;
+			keys = new long[capacity * keyLength];
+			moves = new long[capacity];
+		}
+
+		int size() {
+			return size;
+		}
+
+		boolean isFull() {
+			return size == moves.length;
+		}
+
+		void add(long[] key, long move) {
+			System.arraycopy(key, 0, keys, size * keyLength, keyLength);
+			moves[size++] = move;
+		}
+
+		/**
+		 * Writes the records sorted, without repeats, to a file, and empties the run.
+		 */
+		File flush(File file) throws IOException {
+			if (order == null) {
+				order = new int[moves.length];
+				scratch = new int[moves.length];
+			}
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			sort(0, size);
+			RunWriter writer = new RunWriter(file, keyLength);
+			try {
+				long[] key = new long[keyLength];
+				for (int i = 0; i < size; i++) {
+					if (i > 0 && compareAt(order[i - 1], order[i]) == 0) {
+						continue;
+					}
+					System.arraycopy(keys, order[i] * keyLength, key, 0, keyLength);
+					writer.write(key, moves[order[i]]);
+				}
+			} finally {
+				writer.close();
+			}
+			size = 0;
+			return file;
+		}
+
+		/**
+		 * Merge sorts order[from, to) by key.
+		 */
+		private void sort(int from, int to) {
+			if (to - from < 2) {
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			sort(from, middle);
+			sort(middle, to);
+			int i = from;
+			int j = middle;
+			int k = from;
+			while (i < middle && j < to) {
+				scratch[k++] = compareAt(order[j], order[i]) < 0 ? order[j++] : order[i++];
+			}
+			while (i < middle) {
+				scratch[k++] = order[i++];
+			}
+			while (j < to) {
+				scratch[k++] = order[j++];
+			}
+			System.arraycopy(scratch, from, order, from, to - from);
+		}
+
+		private int compareAt(int a, int b) {
+			for (int i = 0; i < keyLength; i++) {
+				long x = keys[a * keyLength + i];
+				long y = keys[b * keyLength + i];
+				if (x != y) {
+					return x < y ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Writes sorted records to a file, each coded against the one before.
+	 */
+	private static class RunWriter {
+		private final DataOutputStream out;
+		private final long[] last;
+
+		RunWriter(File file, int keyLength) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			last = new long[keyLength];
+		}
+
+		void write(long[] key, long move) throws IOException {
+			int shared = 0;
+			while (shared < key.length && key[shared] == last[shared]) {
+				shared++;
+			}
+			out.writeByte(shared);
+			for (int i = shared; i < key.length; i++) {
+				writeNumber(i == shared ? key[i] - last[i] : key[i]);
+				last[i] = key[i];
+			}
+			writeNumber(move);
+		}
+
+		private void writeNumber(long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				out.writeByte((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte((int) value);
+		}
+
+		void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the records of a file written by RunWriter through a window mapped
+	 * onto it, moved along as it is read.
+	 */
+	private static class RunReader {
+		final long[] key;
+		long move;
+		private final RandomAccessFile file;
+		private final long length;
+		private final int maxRecord;
+		private long base;
+		private MappedByteBuffer window;
+
+		RunReader(File run, int keyLength) throws IOException {
+			key = new long[keyLength];
+			file = new RandomAccessFile(run, "r");
+			length = file.length();
+			maxRecord = 1 + 10 * (keyLength + 1);
+			window = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW, length));
+		}
+
+		/**
+		 * Reads the next record into key and move; returns false at the end.
+		 */
+		boolean next() throws IOException {
+			if (base + window.position() >= length) {
+				return false;
+			}
+			if (window.remaining() < maxRecord && base + window.limit() < length) {
+				base += window.position();
+				window = file.getChannel().map(FileChannel.MapMode.READ_ONLY, base, Math.min(WINDOW, length - base));
+			}
+			int shared = window.get();
+			for (int i = shared; i < key.length; i++) {
+				long value = readNumber();
+				key[i] = i == shared ? key[i] + value : value;
+			}
+			move = readNumber();
+			return true;
+		}
+
+		private long readNumber() {
+			long value = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = window.get();
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+
+		void close() throws IOException {
+			file.close();
+		}
+	}
+}
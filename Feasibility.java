@@ -0,0 +1,217 @@
+import java.util.*;
+
+/**
+ * Proves some puzzles unsolvable before any search, from things no sequence of
+ * moves can change:
+ *
+ * 		- the blocks in the tray: the goal cannot ask for a size the tray does not
+ * 		  have, for more blocks of a size than it has, or for blocks that overlap;
+ * 		- the empty cells: a block can only move to another row when as many cells
+ * 		  as it is wide are empty, so if fewer cells are empty than a size of block
+ * 		  is wide, the rows of the blocks of that size never change; likewise for
+ * 		  columns and lengths, and a size with both never moves at all;
+ * 		- blocks as wide (or as long) as the tray: nothing can get past them, so
+ * 		  they keep their order, the blocks between two of them stay there, and each
+ * 		  keeps out of the rows the blocks above and below it need;
+ * 		- whether any block can move at all.
+ *
+ * Every move can be taken back, so any configuration reachable from the initial one
+ * can reach the goal exactly when the initial one can. There are no dead states to
+ * prune in a search short of all of them, and checking the initial configuration
+ * is as strong as checking every configuration.
+ */
+public class Feasibility {
+
+	private Feasibility() {
+	}
+
+	/**
+	 * Returns why the goal cannot be reached from the tray's configuration, or null
+	 * if none of the checks shows that it cannot; it may still be unreachable.
+	 *
+	 * @param tray	the tray, in its initial configuration. It is not changed.
+	 */
+	public static String check(Tray tray) {
+		if (tray.equalsGoal()) {
+			return null;
+		}
+		Puzzle puzzle = tray.getPuzzle();
+		StateEncoder encoder = puzzle.getEncoder();
+		int length = puzzle.getLength();
+		int width = puzzle.getWidth();
+		List<int[]> blocks = tray.getBlocks();
+		int[] classCounts = tray.classCounts();
+
+		// The goal itself, leaving out repeated goal blocks
+		List<int[]> goal = new ArrayList<int[]>();
+		int[] goalCounts = new int[classCounts.length];
+		boolean[] covered = new boolean[length * width];
+		int[] goalAt = new int[length * width];
+		for (int[] goalBlock : puzzle.getGoal()) {
+			int c = encoder.sizeClass(goalBlock[0], goalBlock[1]);
+			if (c < 0) {
+				return "the tray has no " + goalBlock[0] + "x" + goalBlock[1] + " block";
+			}
+			if (!puzzle.fits(goalBlock)) {
+				return "goal block " + describe(goalBlock) + " is outside the tray";
+			}
+			int origin = goalBlock[2] * width + goalBlock[3];
+			if (goalAt[origin] != 0 && Arrays.equals(goal.get(goalAt[origin] - 1), goalBlock)) {
+				continue;
+			}
+			for (int i = goalBlock[2]; i < goalBlock[2] + goalBlock[0]; i++) {
+				for (int j = goalBlock[3]; j < goalBlock[3] + goalBlock[1]; j++) {
+					if (covered[i * width + j]) {
+						return "goal blocks overlap at " + i + " " + j;
+					}
+					covered[i * width + j] = true;
+				}
+			}
+			if (++goalCounts[c] > classCounts[c]) {
+				return "the goal has more " + goalBlock[0] + "x" + goalBlock[1] + " blocks than the tray's "
+						+ classCounts[c];
+			}
+			goal.add(goalBlock);
+			goalAt[origin] = goal.size();
+		}
+
+		// Sizes that can never change rows or columns
+		int empty = length * width;
+		for (int[] block : blocks) {
+			empty -= block[0] * block[1];
+		}
+		String reason = checkLanes(blocks, goal, encoder, empty, 0, length);
+		if (reason == null) {
+			reason = checkLanes(blocks, goal, encoder, empty, 1, width);
+		}
+		if (reason != null) {
+			return reason;
+		}
+		for (int[] goalBlock : goal) {
+			if (empty < goalBlock[0] && empty < goalBlock[1]
+					&& !Arrays.equals(goalBlock, tray.blockAt(goalBlock[2] * width + goalBlock[3]))) {
+				return goalBlock[0] + "x" + goalBlock[1] + " blocks cannot move, and none is at "
+						+ goalBlock[2] + " " + goalBlock[3];
+			}
+		}
+
+		// Blocks that span the tray
+		reason = checkWalls(blocks, goal, 0, length, width);
+		if (reason == null) {
+			reason = checkWalls(blocks, goal, 1, width, length);
+		}
+		if (reason != null) {
+			return reason;
+		}
+
+		MoveList moves = new MoveList();
+		tray.getMoves(moves);
+		if (moves.size() == 0) {
+			return "no block can move";
+		}
+		return null;
+	}
+
+	/**
+	 * Checks the goal against sizes too wide for the empty cells to ever let them
+	 * change rows (axis 0), or too long to ever change columns (axis 1): every goal
+	 * row (column) of such a size must have as many blocks of the size in it already.
+	 *
+	 * @param axis	0 for rows, 1 for columns.
+	 * @param lanes	the number of rows (columns) in the tray.
+	 */
+	private static String checkLanes(List<int[]> blocks, List<int[]> goal, StateEncoder encoder, int empty,
+			int axis, int lanes) {
+		int[][] counts = new int[encoder.classCount()][];
+		for (int[] block : blocks) {
+			if (empty < block[1 - axis]) {
+				int c = encoder.sizeClass(block[0], block[1]);
+				if (counts[c] == null) {
+					counts[c] = new int[lanes];
+				}
+				counts[c][block[2 + axis]]++;
+			}
+		}
+		for (int[] goalBlock : goal) {
+			int[] count = counts[encoder.sizeClass(goalBlock[0], goalBlock[1])];
+			if (count != null && --count[goalBlock[2 + axis]] < 0) {
+				return goalBlock[0] + "x" + goalBlock[1] + " blocks never leave their "
+						+ (axis == 0 ? "rows" : "columns") + ", and not enough are in "
+						+ (axis == 0 ? "row " : "column ") + goalBlock[2 + axis];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks the goal against blocks that span the tray across an axis. In order
+	 * along the axis, each such block has the ones before it and the other blocks
+	 * between them before it, which need at least as many rows (columns) as the
+	 * longest of them, and the same after it. A goal block of a spanning size must
+	 * fall within those bounds for one of the blocks of its size.
+	 *
+	 * @param axis		0 for blocks as wide as the tray, 1 for blocks as long as it.
+	 * @param size		the number of rows (columns) in the tray.
+	 * @param across	the number of columns (rows) in the tray.
+	 */
+	private static String checkWalls(List<int[]> blocks, List<int[]> goal, final int axis, int size, int across) {
+		List<int[]> walls = new ArrayList<int[]>();
+		for (int[] block : blocks) {
+			if (block[1 - axis] == across) {
+				walls.add(block);
+			}
+		}
+		if (walls.isEmpty()) {
+			return null;
+		}
+		Collections.sort(walls, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return a[2 + axis] - b[2 + axis];
+			}
+		});
+		int[] places = new int[walls.size()];
+		for (int k = 0; k < places.length; k++) {
+			places[k] = walls.get(k)[2 + axis];
+		}
+		// gaps[k]: the longest other block between wall k - 1 and wall k
+		int[] gaps = new int[walls.size() + 1];
+		for (int[] block : blocks) {
+			if (block[1 - axis] != across) {
+				int k = -1 - Arrays.binarySearch(places, block[2 + axis]);
+				gaps[k] = Math.max(gaps[k], block[axis]);
+			}
+		}
+		int[] lowest = new int[walls.size()];
+		int before = 0;
+		for (int k = 0; k < walls.size(); k++) {
+			before += gaps[k];
+			lowest[k] = before;
+			before += walls.get(k)[axis];
+		}
+		int[] highest = new int[walls.size()];
+		int after = 0;
+		for (int k = walls.size() - 1; k >= 0; k--) {
+			after += gaps[k + 1] + walls.get(k)[axis];
+			highest[k] = size - after;
+		}
+		for (int[] goalBlock : goal) {
+			if (goalBlock[1 - axis] != across) {
+				continue;
+			}
+			boolean reachable = false;
+			for (int k = 0; k < walls.size() && !reachable; k++) {
+				reachable = walls.get(k)[axis] == goalBlock[axis] && lowest[k] <= goalBlock[2 + axis]
+						&& goalBlock[2 + axis] <= highest[k];
+			}
+			if (!reachable) {
+				return "no " + goalBlock[0] + "x" + goalBlock[1] + " block can get past the others to "
+						+ (axis == 0 ? "row " : "column ") + goalBlock[2 + axis];
+			}
+		}
+		return null;
+	}
+
+	private static String describe(int[] block) {
+		return block[0] + " " + block[1] + " " + block[2] + " " + block[3];
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * A search that keeps a fringe of unexpanded nodes and never visits a
+ * configuration twice. Nodes live in a NodeArena, where each node has the index
+ * of its configuration in the visited set, and the fringe holds node indices.
+ * Subclasses decide the order the fringe is expanded in.
+ */
+public abstract class FrontierSearch implements SearchStrategy {
+
+	protected VisitedSet visited;
+	protected NodeArena nodes;
+
+	public long[] search(Tray tray) {
+		SolverOptions options = tray.getPuzzle().getOptions();
+		Checkpoint checkpoint = options.getCheckpointFile() == null ? null
+				: new Checkpoint(options.getCheckpointFile(), options.getCheckpointInterval(), tray, this);
+		try {
+			long[] path = search(tray, checkpoint);
+			if (checkpoint != null) {
+				checkpoint.finish();
+			}
+			return path;
+		} finally {
+			if (checkpoint != null) {
+				checkpoint.close();
+			}
+		}
+	}
+
+	/**
+	 * Searches from the tray, or from where the checkpoint was saved if it has been,
+	 * saving to the checkpoint whenever it is due.
+	 */
+	private long[] search(Tray tray, Checkpoint checkpoint) {
+		long[] key = new long[tray.keyLength()];
+		MoveList moves = new MoveList();
+		Debug debug = tray.getPuzzle().getOptions().getDebug();
+		SearchStats stats = tray.getPuzzle().getStats();
+		long start = System.currentTimeMillis();
+		long expanded = 0;
+		long generated = 0;
+		long duplicates = 0;
+		long fringeSize = 0;
+		Checkpoint.State saved = checkpoint == null ? null : checkpoint.load();
+		int transform;
+		if (saved != null) {
+			visited = saved.getVisited();
+			nodes = saved.getNodes();
+			for (long entry : saved.getFringe()) {
+				push((int) entry, (int) (entry >>> 32));
+			}
+			fringeSize = saved.getFringe().length;
+			expanded = saved.getExpanded();
+			start -= saved.getElapsed();
+			//{Start Debugging!}
+			if (debug.solverTime == Debug.doDebug) {
+				System.out.println("{Debugging} resumed after " + saved.getElapsed() + "ms: " + visited.size()
+						+ " configurations, " + expanded + " expanded");
+			}
+			//{End Debugging...}
+		} else {
+			visited = new VisitedSet(tray.keyLength());
+			nodes = new NodeArena();
+			transform = tray.canonical();
+			tray.encode(key, transform);
+			visited.add(key, tray.hash(transform));
+			int priority = priority(0, tray);
+			if (priority < 0) {
+				return null;
+			}
+			push(nodes.add(-1, 0, transform), priority);
+			fringeSize = 1;
+		}
+		while (!isEmpty()) {
+			if ((expanded & 1023) == 0) {
+				stats.report(expanded, generated, duplicates, fringeSize);
+				if (checkpoint != null && checkpoint.isDue()) {
+					checkpoint.save(visited.snapshot(), nodes.snapshot(), fringe(), expanded,
+							System.currentTimeMillis() - start);
+				}
+			}
+			int node = pop();
+			fringeSize--;
+			expanded++;
+			visited.getKey(node, key);
+			tray.load(key);
+			if (tray.equalsGoal()) {
+				stats.report(expanded, generated, duplicates, fringeSize);
+				return nodes.pathTo(node);
+			}
+			int nodeTransform = nodes.getTransform(node);
+			int depth = nodes.getDepth(node) + 1;
+			tray.getMoves(moves);
+			for (int i = 0; i < moves.size(); i++) {
+				long move = moves.get(i);
+				//{Start Debugging!}
+				if (debug.printMoves == Debug.doDebug) {
+					System.out.println("{Debugging} Move " + Move.toString(move, tray.getWidth()));
+				}
+				//{End Debugging...}
+				long played = tray.mirrorMove(move, nodeTransform);
+				tray.makeMove(move);
+				transform = tray.canonical();
+				tray.encode(key, transform);
+				int state = visited.add(key, tray.hash(transform));
+				generated++;
+				if (state >= 0) {
+					int priority = priority(depth, tray);
+					int child = nodes.add(node, played, nodeTransform ^ transform);
+					if (priority >= 0) {
+						push(child, priority);
+						fringeSize++;
+					}
+				} else if (reopens() && depth < nodes.getDepth(-state - 1)) {
+					// a shorter way to a configuration already seen: put it back on the fringe
+					int priority = priority(depth, tray);
+					if (priority >= 0) {
+						nodes.reparent(-state - 1, node, played, nodeTransform ^ transform);
+						push(-state - 1, priority);
+						fringeSize++;
+					}
+				} else {
+					duplicates++;
+				}
+				tray.undoMove(move);
+			}
+		}
+		stats.report(expanded, generated, duplicates, fringeSize);
+		return null;
+	}
+
+	public long getExplored() {
+		return visited == null ? 0 : visited.size();
+	}
+
+	/**
+	 * Returns the priority of a configuration reached after depth moves; lower
+	 * priorities are expanded first by strategies that use them. A negative
+	 * priority marks a configuration that cannot reach the goal, which is not
+	 * expanded.
+	 *
+	 * @param depth	the number of moves from the initial tray.
+	 * @param tray	the tray, in the configuration being scored.
+	 */
+	protected abstract int priority(int depth, Tray tray);
+
+	/**
+	 * Returns the settings besides its class that decide the order this search
+	 * expands configurations in, so that a checkpoint is only resumed by the same
+	 * search; none by default.
+	 */
+	protected int[] getSettings() {
+		return new int[0];
+	}
+
+	/**
+	 * Returns true if a configuration reached again in fewer moves than before
+	 * should be put back on the fringe from its new parent, even if it has been
+	 * expanded, as A* needs to find shortest solutions. Otherwise a configuration
+	 * keeps the first way it was reached.
+	 */
+	protected boolean reopens() {
+		return false;
+	}
+
+	/**
+	 * Adds a node to the fringe.
+	 *
+	 * @param node		the node's index in nodes.
+	 * @param priority	the priority of the node's configuration.
+	 */
+	protected abstract void push(int node, int priority);
+
+	protected abstract int pop();
+
+	protected abstract boolean isEmpty();
+
+	/**
+	 * Returns the nodes on the fringe as priority << 32 | node, in an order that
+	 * pushing them again restores.
+	 */
+	protected abstract long[] fringe();
+
+	/**
+	 * Returns the moves from the initial tray to a SearchNode, in order.
+	 */
+	protected static long[] pathTo(SearchNode node) {
+		long[] result = new long[node.getDepth()];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = node.getMove();
+			node = node.getParent();
+		}
+		return result;
+	}
+}
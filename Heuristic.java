@@ -0,0 +1,41 @@
+/**
+ * An estimate of how many moves a configuration is from the goal, kept up to date
+ * as blocks move instead of being recomputed from every block for each node. A
+ * Tray creates its heuristic the first time it is asked for a score and from then
+ * on reports every block that moves, as the codes (see StateEncoder) it moved
+ * between. Blocks of one size are interchangeable, so a heuristic only ever sees
+ * codes, never block numbers.
+ *
+ * The estimate is admissible (never more than the true number of moves), and so
+ * gives A* and IDA* shortest solutions, only if the heuristic says so and the
+ * search makes one-cell moves.
+ */
+public interface Heuristic {
+
+	/**
+	 * Starts over from a configuration.
+	 *
+	 * @param codes	the codes of every block in the tray.
+	 */
+	void reset(int[] codes);
+
+	/**
+	 * Records that a block moved. While a configuration is being loaded two
+	 * blocks may briefly report the same code.
+	 *
+	 * @param oldCode	the block's code before the move.
+	 * @param newCode	the block's code after the move, in the same size class.
+	 */
+	void moved(int oldCode, int newCode);
+
+	/**
+	 * Returns the estimate for the current configuration; 0 when the goal is reached,
+	 * and at least PatternDatabase.DEAD_END when the goal is known to be out of reach.
+	 */
+	int score();
+
+	/**
+	 * Returns an independent copy in the same configuration, for a copy of the Tray.
+	 */
+	Heuristic copy();
+}
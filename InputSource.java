@@ -1,7 +1,8 @@
 import java.util.*;
 import java.io.*;
 
-// A class that generates lines from the input.
+// A class that generates lines from the input. Trays and goals are read with
+// TrayReader, which does not make a String per line.
 
 public class InputSource {
 
@@ -13,8 +14,7 @@ public class InputSource {
 			in = new BufferedReader (new InputStreamReader (System.in));
 			myLineNumber = 0;
 		} catch (Exception e) {
-			System.err.println ("Couldn't access keyboard!");
-			System.exit (1);
+			throw new IllegalStateException ("Couldn't access keyboard!", e);
 		}
 	}
 
@@ -23,8 +23,7 @@ public class InputSource {
 			in = new BufferedReader (new InputStreamReader (new FileInputStream (fileName)));
 			myLineNumber = 0;
 		} catch (Exception e) {
-			System.err.println ("Couldn't access file!");
-			System.exit (1);
+			throw new TrayFormatException (fileName, 0, "couldn't access file");
 		}
 	}
 
@@ -33,8 +32,7 @@ public class InputSource {
 		try {
 			line = in.readLine ( );
 		} catch (IOException e) {
-			System.err.println ("input error");
-			System.exit (1);
+			throw new IllegalStateException ("input error at line " + (myLineNumber + 1), e);
 		}
 		if (line == null) {
 			return null;
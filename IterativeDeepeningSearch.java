@@ -0,0 +1,163 @@
+/**
+ * IDA*: repeated depth-first searches that give up on a line of play once
+ * g + h passes a bound, raising the bound to the smallest value that was cut
+ * off each time. The tray is changed in place with makeMove/undoMove, so the
+ * only memory the search needs besides the current line is a fixed-size table
+ * of recently seen configurations and the fewest moves they were reached in,
+ * which keeps it from re-exploring transpositions.
+ */
+public class IterativeDeepeningSearch implements SearchStrategy {
+
+	private static final int FOUND = -1;
+	private static final int DEFAULT_TABLE_SIZE = 1 << 20;
+
+	private final int tableSize;
+	private Tray tray;
+	private int keyLength;
+	private long[] tableKeys;
+	private int[] tableDepth;
+	private int[] tableRound;
+	private int round;
+	private long[] key;
+	private MoveList[] moves;
+	private long[] line;
+	private int bound;
+	private int depthFound;
+	private long explored;
+	private long generated;
+	private long duplicates;
+	private SearchStats stats;
+
+	public IterativeDeepeningSearch() {
+		this(DEFAULT_TABLE_SIZE);
+	}
+
+	/**
+	 * @param tableSize	the number of configurations the transposition table holds.
+	 */
+	public IterativeDeepeningSearch(int tableSize) {
+		if (tableSize <= 0) {
+			throw new IllegalArgumentException("Table size must be positive.");
+		}
+		this.tableSize = tableSize;
+	}
+
+	public long[] search(Tray tray) {
+		this.tray = tray;
+		keyLength = tray.keyLength();
+		tableKeys = new long[tableSize * keyLength];
+		tableDepth = new int[tableSize];
+		tableRound = new int[tableSize];
+		key = new long[keyLength];
+		moves = new MoveList[16];
+		line = new long[16];
+		bound = tray.setScore();
+		explored = 0;
+		generated = 0;
+		duplicates = 0;
+		stats = tray.getPuzzle().getStats();
+		if (bound >= PatternDatabase.DEAD_END) {
+			return null;
+		}
+		while (true) {
+			round++;
+			int next = explore(0);
+			stats.report(explored, generated, duplicates, 0);
+			if (next == FOUND) {
+				long[] result = new long[depthFound];
+				System.arraycopy(line, 0, result, 0, depthFound);
+				return result;
+			}
+			if (next == Integer.MAX_VALUE) {
+				return null;
+			}
+			bound = next;
+		}
+	}
+
+	/**
+	 * Returns the number of configurations examined over all the passes of the
+	 * last search, counting a configuration again each time it is reached.
+	 */
+	public long getExplored() {
+		return explored;
+	}
+
+	/**
+	 * Searches below the tray's current configuration, reached in depth moves.
+	 *
+	 * @return	FOUND if the goal was reached, otherwise the smallest g + h that
+	 * 			went over the bound (Integer.MAX_VALUE if there was none).
+	 */
+	private int explore(int depth) {
+		if ((++explored & 1023) == 0) {
+			stats.report(explored, generated, duplicates, depth);
+		}
+		int score = tray.setScore();
+		if (score >= PatternDatabase.DEAD_END) {
+			return Integer.MAX_VALUE;
+		}
+		int f = depth + score;
+		if (f > bound) {
+			return f;
+		}
+		if (tray.equalsGoal()) {
+			depthFound = depth;
+			return FOUND;
+		}
+		if (!record(depth)) {
+			duplicates++;
+			return Integer.MAX_VALUE;
+		}
+		if (depth == moves.length) {
+			MoveList[] bigger = new MoveList[depth * 2];
+			System.arraycopy(moves, 0, bigger, 0, depth);
+			moves = bigger;
+			long[] longer = new long[depth * 2];
+			System.arraycopy(line, 0, longer, 0, depth);
+			line = longer;
+		}
+		if (moves[depth] == null) {
+			moves[depth] = new MoveList();
+		}
+		MoveList here = moves[depth];
+		tray.getMoves(here);
+		generated += here.size();
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < here.size(); i++) {
+			long move = here.get(i);
+			line[depth] = move;
+			tray.makeMove(move);
+			int result = explore(depth + 1);
+			tray.undoMove(move);
+			if (result == FOUND) {
+				return FOUND;
+			}
+			min = Math.min(min, result);
+		}
+		return min;
+	}
+
+	/**
+	 * Records that the current configuration was reached in depth moves during
+	 * this round. Returns false if it was already reached in as few moves, in
+	 * which case there is nothing new to find below it.
+	 */
+	private boolean record(int depth) {
+		tray.encode(key);
+		long hash = tray.hash();
+		int slot = (int) ((hash ^ (hash >>> 32)) & 0x7FFFFFFF) % tableSize;
+		int offset = slot * keyLength;
+		boolean same = tableRound[slot] == round;
+		for (int i = 0; same && i < keyLength; i++) {
+			same = tableKeys[offset + i] == key[i];
+		}
+		if (same && tableDepth[slot] <= depth) {
+			return false;
+		}
+		System.arraycopy(key, 0, tableKeys, offset, keyLength);
+		tableDepth[slot] = depth;
+		tableRound[slot] = round;
+		return true;
+	}
+}
@@ -0,0 +1,129 @@
+import java.util.*;
+
+/**
+ * The sum, over the goal blocks, of the Manhattan distance from each to the nearest
+ * block of its size. Cheap and a good guide for greedy search. It is admissible
+ * with one-cell moves, since each goal block needs some block of its size to travel
+ * at least that far, but weaker than AssignmentHeuristic: one block may be the
+ * nearest to several goal blocks, which lowers the estimate rather than raising
+ * it, and a single move can then lower it by more than one.
+ *
+ * For every goal block a histogram counts the blocks of its size at each distance,
+ * so moving a block only touches the goal blocks of its size, and the nearest
+ * distance is rescanned only when the last block at that distance moves away.
+ */
+public class ManhattanHeuristic implements Heuristic {
+
+	private final StateEncoder encoder;
+	private final int span;
+	private final int[] goalRow;
+	private final int[] goalCol;
+	/**The goal blocks of each size class**/
+	private final int[][] classGoals;
+	/**span counts per goal block: the number of its blocks at each distance**/
+	private final int[] counts;
+	private final int[] nearest;
+	private int total;
+
+	/**
+	 * @param puzzle	the puzzle whose goal to measure against.
+	 */
+	public ManhattanHeuristic(Puzzle puzzle) {
+		encoder = puzzle.getEncoder();
+		span = puzzle.getLength() + puzzle.getWidth() - 1;
+		List<int[]> goal = new ArrayList<int[]>();
+		// a goal file may repeat a line, which must only count once
+		int[] goalAt = new int[puzzle.getLength() * puzzle.getWidth()];
+		for (int[] goalBlock : puzzle.getGoal()) {
+			if (!puzzle.fits(goalBlock)) {
+				continue;
+			}
+			int origin = goalBlock[2] * puzzle.getWidth() + goalBlock[3];
+			if (goalAt[origin] != 0 && Arrays.equals(goal.get(goalAt[origin] - 1), goalBlock)) {
+				continue;
+			}
+			goal.add(goalBlock);
+			goalAt[origin] = goal.size();
+		}
+		int goals = goal.size();
+		goalRow = new int[goals];
+		goalCol = new int[goals];
+		int[] perClass = new int[encoder.classCount()];
+		int[] goalClass = new int[goals];
+		for (int g = 0; g < goals; g++) {
+			int[] goalBlock = goal.get(g);
+			goalClass[g] = encoder.sizeClass(goalBlock[0], goalBlock[1]);
+			goalRow[g] = goalBlock[2];
+			goalCol[g] = goalBlock[3];
+			perClass[goalClass[g]]++;
+		}
+		classGoals = new int[encoder.classCount()][];
+		for (int c = 0; c < classGoals.length; c++) {
+			classGoals[c] = new int[perClass[c]];
+			perClass[c] = 0;
+		}
+		for (int g = 0; g < goals; g++) {
+			classGoals[goalClass[g]][perClass[goalClass[g]]++] = g;
+		}
+		counts = new int[goals * span];
+		nearest = new int[goals];
+	}
+
+	private ManhattanHeuristic(ManhattanHeuristic other) {
+		encoder = other.encoder;
+		span = other.span;
+		goalRow = other.goalRow;
+		goalCol = other.goalCol;
+		classGoals = other.classGoals;
+		counts = other.counts.clone();
+		nearest = other.nearest.clone();
+		total = other.total;
+	}
+
+	public void reset(int[] codes) {
+		Arrays.fill(counts, 0);
+		for (int code : codes) {
+			for (int g : classGoals[encoder.classOf(code)]) {
+				counts[g * span + distance(g, code)]++;
+			}
+		}
+		total = 0;
+		for (int g = 0; g < nearest.length; g++) {
+			nearest[g] = 0;
+			while (counts[g * span + nearest[g]] == 0) {
+				nearest[g]++;
+			}
+			total += nearest[g];
+		}
+	}
+
+	public void moved(int oldCode, int newCode) {
+		for (int g : classGoals[encoder.classOf(oldCode)]) {
+			int from = distance(g, oldCode);
+			int to = distance(g, newCode);
+			counts[g * span + from]--;
+			counts[g * span + to]++;
+			if (to < nearest[g]) {
+				total -= nearest[g] - to;
+				nearest[g] = to;
+			} else if (from == nearest[g] && counts[g * span + from] == 0) {
+				while (counts[g * span + nearest[g]] == 0) {
+					nearest[g]++;
+				}
+				total += nearest[g] - from;
+			}
+		}
+	}
+
+	public int score() {
+		return total;
+	}
+
+	public Heuristic copy() {
+		return new ManhattanHeuristic(this);
+	}
+
+	private int distance(int g, int code) {
+		return Math.abs(encoder.rowOf(code) - goalRow[g]) + Math.abs(encoder.colOf(code) - goalCol[g]);
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Moves are passed around as longs rather than objects: the cell (row * trayWidth + col)
+ * of the moved block's upper left corner before the move in the high half, and the
+ * cell after the move in the low half. A move only refers to positions, not to a
+ * particular Block, so it stays meaningful for any tray in the same configuration.
+ *
+ * A move may cover several cells. If the two cells are not in the same row or column
+ * the block travels along an L: it first changes row and then column, unless the top
+ * bit (COLUMNS_FIRST) is set, in which case it first changes column.
+ */
+public class Move {
+
+	private static final long COLUMNS_FIRST = 1L << 63;
+
+	private Move() {
+	}
+
+	/**
+	 * Returns the move of the block whose upper left corner is at fromCell to toCell,
+	 * changing row before column.
+	 */
+	public static long of(int fromCell, int toCell) {
+		return ((long) fromCell << 32) | toCell;
+	}
+
+	/**
+	 * Returns the move of the block whose upper left corner is at fromCell to toCell.
+	 *
+	 * @param columnsFirst	true if the block changes column before row.
+	 */
+	public static long of(int fromCell, int toCell, boolean columnsFirst) {
+		return columnsFirst ? of(fromCell, toCell) | COLUMNS_FIRST : of(fromCell, toCell);
+	}
+
+	public static int from(long move) {
+		return (int) (move >>> 32) & Integer.MAX_VALUE;
+	}
+
+	public static int to(long move) {
+		return (int) move;
+	}
+
+	public static boolean columnsFirst(long move) {
+		return (move & COLUMNS_FIRST) != 0;
+	}
+
+	/**
+	 * Returns the move that undoes the given move, along the same cells.
+	 */
+	public static long reverse(long move) {
+		return of(to(move), from(move), !columnsFirst(move));
+	}
+
+	/**
+	 * Adds the one-cell moves a move is made of to units, in order.
+	 *
+	 * @param move		the move.
+	 * @param trayWidth	the number of columns in the tray.
+	 * @param units		the list to add to.
+	 */
+	public static void expand(long move, int trayWidth, MoveList units) {
+		int row = from(move) / trayWidth;
+		int col = from(move) % trayWidth;
+		int toRow = to(move) / trayWidth;
+		int toCol = to(move) % trayWidth;
+		boolean columns = columnsFirst(move);
+		for (int leg = 0; leg < 2; leg++) {
+			if (columns) {
+				while (col != toCol) {
+					int next = col + Integer.signum(toCol - col);
+					units.add(of(row * trayWidth + col, row * trayWidth + next));
+					col = next;
+				}
+			} else {
+				while (row != toRow) {
+					int next = row + Integer.signum(toRow - row);
+					units.add(of(row * trayWidth + col, next * trayWidth + col));
+					row = next;
+				}
+			}
+			columns = !columns;
+		}
+	}
+
+	/**
+	 * Returns the "row col row col" line the Checker expects for a one-cell move.
+	 *
+	 * @param move		the move.
+	 * @param trayWidth	the number of columns in the tray.
+	 */
+	public static String toString(long move, int trayWidth) {
+		int from = from(move);
+		int to = to(move);
+		return (from / trayWidth) + " " + (from % trayWidth) + " " + (to / trayWidth) + " " + (to % trayWidth);
+	}
+}
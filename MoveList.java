@@ -0,0 +1,43 @@
+/**
+ * A reusable, growable list of moves (see Move) so that generating the
+ * successors of a tray does not allocate once the list has warmed up.
+ */
+public class MoveList {
+
+	private long[] myMoves;
+	private int mySize = 0;
+
+	public MoveList() {
+		myMoves = new long[16];
+	}
+
+	public void add(long move) {
+		if (mySize == myMoves.length) {
+			long[] bigger = new long[mySize * 2];
+			System.arraycopy(myMoves, 0, bigger, 0, mySize);
+			myMoves = bigger;
+		}
+		myMoves[mySize++] = move;
+	}
+
+	public long get(int index) {
+		return myMoves[index];
+	}
+
+	public int size() {
+		return mySize;
+	}
+
+	public void clear() {
+		mySize = 0;
+	}
+
+	/**
+	 * Returns the moves in a new array.
+	 */
+	public long[] toArray() {
+		long[] moves = new long[mySize];
+		System.arraycopy(myMoves, 0, moves, 0, mySize);
+		return moves;
+	}
+}
@@ -0,0 +1,230 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * The nodes of a search tree, kept as parallel primitive arrays instead of one
+ * object per node: for each node the index of its parent, the move that reached it
+ * from the parent, its depth and the mirror image it was stored as (see
+ * SearchNode, whose fields these are). That is 17 bytes a node, next to the
+ * configuration's key in the VisitedSet; priorities are kept by the fringe, which
+ * is the only thing that needs them.
+ *
+ * Searches that add one node for each new configuration use the configuration's
+ * index in the visited set as the node's index, so the two stay in step. The arrays
+ * grow by pages. Entries only change through reparent, when a search finds a
+ * shorter way to a configuration; a page a snapshot may still be reading is copied
+ * before it is changed, so snapshots stay as they were taken.
+ */
+public class NodeArena {
+
+	private static final int PAGE_BITS = 16;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private int[][] parents = new int[4][];
+	private long[][] moves = new long[4][];
+	private int[][] depths = new int[4][];
+	private byte[][] transforms = new byte[4][];
+	/**Pages that a snapshot shares, and reparent must copy before changing**/
+	private boolean[] shared = new boolean[4];
+	private int size = 0;
+
+	/**
+	 * Adds a node.
+	 *
+	 * @param parent	the index of the node this one was reached from, or -1 for the root.
+	 * @param move		the move from the parent's configuration to this one.
+	 * @param transform	the mirror image (see Puzzle.mirror) the configuration is
+	 * 					of the one stored for it.
+	 * @return			the index of the new node.
+	 */
+	public int add(int parent, long move, int transform) {
+		return append(parent, move, parent < 0 ? 0 : getDepth(parent) + 1, transform);
+	}
+
+	private int append(int parent, long move, int depth, int transform) {
+		if (size == Integer.MAX_VALUE) {
+			throw new IllegalStateException("Node arena is full.");
+		}
+		int node = size;
+		int p = node >>> PAGE_BITS;
+		if (p == parents.length) {
+			parents = grow(parents);
+			moves = grow(moves);
+			depths = grow(depths);
+			transforms = grow(transforms);
+			shared = Arrays.copyOf(shared, shared.length * 2);
+		}
+		if (parents[p] == null) {
+			parents[p] = new int[PAGE_SIZE];
+			moves[p] = new long[PAGE_SIZE];
+			depths[p] = new int[PAGE_SIZE];
+			transforms[p] = new byte[PAGE_SIZE];
+			shared[p] = false;
+		}
+		int i = node & PAGE_MASK;
+		parents[p][i] = parent;
+		moves[p][i] = move;
+		depths[p][i] = depth;
+		transforms[p][i] = (byte) transform;
+		size++;
+		return node;
+	}
+
+	/**
+	 * Hangs a node from a new parent, for a configuration reached in fewer moves
+	 * than before. Nodes below it keep their old depths until they are reached again.
+	 *
+	 * @param node		the node.
+	 * @param parent	the index of the node it is now reached from.
+	 * @param move		the move from the parent's configuration to this one.
+	 * @param transform	the mirror image the configuration is of the one stored for it.
+	 */
+	public void reparent(int node, int parent, long move, int transform) {
+		int p = node >>> PAGE_BITS;
+		int i = node & PAGE_MASK;
+		if (shared[p]) {
+			parents[p] = parents[p].clone();
+			moves[p] = moves[p].clone();
+			depths[p] = depths[p].clone();
+			transforms[p] = transforms[p].clone();
+			shared[p] = false;
+		}
+		parents[p][i] = parent;
+		moves[p][i] = move;
+		depths[p][i] = getDepth(parent) + 1;
+		transforms[p][i] = (byte) transform;
+	}
+
+	public int getParent(int node) {
+		return parents[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	public long getMove(int node) {
+		return moves[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	/**
+	 * Returns the number of moves from the root to a node.
+	 */
+	public int getDepth(int node) {
+		return depths[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	public int getTransform(int node) {
+		return transforms[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	/**
+	 * Returns the number of nodes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the moves from the root to a node, in order. The path is measured
+	 * along the parents, since a node below a reparented one may still have its
+	 * old, larger depth.
+	 */
+	public long[] pathTo(int node) {
+		int length = 0;
+		for (int n = node; getParent(n) >= 0; n = getParent(n)) {
+			length++;
+		}
+		long[] result = new long[length];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = getMove(node);
+			node = getParent(node);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a view of the nodes added so far, which stays valid, and may be read
+	 * from another thread, while more nodes are added.
+	 */
+	public Snapshot snapshot() {
+		Arrays.fill(shared, true);
+		return new Snapshot(parents.clone(), moves.clone(), depths.clone(), transforms.clone(), size);
+	}
+
+	/**
+	 * Reads nodes written by Snapshot.write.
+	 *
+	 * @param in	the stream to read from.
+	 * @throws IOException	if the stream cannot be read or does not hold nodes.
+	 */
+	public static NodeArena read(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		NodeArena arena = new NodeArena();
+		for (int node = 0; node < size; node++) {
+			int parent = in.readInt();
+			long move = in.readLong();
+			int depth = in.readInt();
+			int transform = in.readByte();
+			if (parent < -1 || parent >= size || (parent < 0) != (node == 0) || depth < 0) {
+				throw new IOException("Not a search tree.");
+			}
+			arena.append(parent, move, depth, transform);
+		}
+		return arena;
+	}
+
+	/**
+	 * The nodes of a NodeArena up to some size.
+	 */
+	public static class Snapshot {
+		private final int[][] parents;
+		private final long[][] moves;
+		private final int[][] depths;
+		private final byte[][] transforms;
+		private final int size;
+
+		private Snapshot(int[][] parents, long[][] moves, int[][] depths, byte[][] transforms, int size) {
+			this.parents = parents;
+			this.moves = moves;
+			this.depths = depths;
+			this.transforms = transforms;
+			this.size = size;
+		}
+
+		/**
+		 * Writes the size and each node's parent, move, depth and transform in
+		 * order. A reparented node's parent may come after it, so depths are
+		 * written rather than worked out again.
+		 *
+		 * @param out	the stream to write to.
+		 * @throws IOException	if the stream cannot be written.
+		 */
+		public void write(DataOutputStream out) throws IOException {
+			out.writeInt(size);
+			for (int node = 0; node < size; node++) {
+				int p = node >>> PAGE_BITS;
+				int i = node & PAGE_MASK;
+				out.writeInt(parents[p][i]);
+				out.writeLong(moves[p][i]);
+				out.writeInt(depths[p][i]);
+				out.writeByte(transforms[p][i]);
+			}
+		}
+	}
+
+	private static int[][] grow(int[][] pages) {
+		int[][] bigger = new int[pages.length * 2][];
+		System.arraycopy(pages, 0, bigger, 0, pages.length);
+		return bigger;
+	}
+
+	private static long[][] grow(long[][] pages) {
+		long[][] bigger = new long[pages.length * 2][];
+		System.arraycopy(pages, 0, bigger, 0, pages.length);
+		return bigger;
+	}
+
+	private static byte[][] grow(byte[][] pages) {
+		byte[][] bigger = new byte[pages.length * 2][];
+		System.arraycopy(pages, 0, bigger, 0, pages.length);
+		return bigger;
+	}
+}
@@ -0,0 +1,165 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Breadth-first search that expands each layer of the search on a ForkJoinPool.
+ * The layer is split into ranges that worker threads expand on their own copies of
+ * the Tray, adding what they generate to a ConcurrentVisitedSet; the next layer is
+ * the concatenation of their results. Layers are synchronized, so the solution
+ * found uses as few moves as possible, just as with BreadthFirstSearch.
+ */
+public class ParallelBreadthFirstSearch implements SearchStrategy {
+
+	/**Ranges of a layer smaller than this are expanded by one task.**/
+	private static final int CHUNK = 256;
+
+	private final int threads;
+	private long explored;
+
+	/**
+	 * @param threads	the number of worker threads.
+	 */
+	public ParallelBreadthFirstSearch(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Need at least one thread.");
+		}
+		this.threads = threads;
+	}
+
+	public long[] search(Tray tray) {
+		explored = 1;
+		if (tray.equalsGoal()) {
+			return new long[0];
+		}
+		final ConcurrentVisitedSet visited = new ConcurrentVisitedSet(tray.keyLength(), threads);
+		long[] key = new long[tray.keyLength()];
+		tray.encode(key);
+		ArrayList<SearchNode> layer = new ArrayList<SearchNode>();
+		layer.add(new SearchNode(null, 0, visited.add(key, tray.hash()), 0));
+		final Tray original = new Tray(tray);
+		final Queue<Worker> all = new ConcurrentLinkedQueue<Worker>();
+		final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+			protected Worker initialValue() {
+				Worker worker = new Worker(new Tray(original), visited);
+				all.add(worker);
+				return worker;
+			}
+		};
+		SearchStats stats = tray.getPuzzle().getStats();
+		long expanded = 0;
+		AtomicReference<SearchNode> found = new AtomicReference<SearchNode>();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			while (!layer.isEmpty() && found.get() == null) {
+				expanded += layer.size();
+				layer = pool.invoke(new Expand(layer, 0, layer.size(), workers, found));
+				long generated = 0;
+				for (Worker worker : all) {
+					generated += worker.generated;
+				}
+				stats.report(expanded, generated, generated - (visited.size() - 1), layer.size());
+			}
+		} finally {
+			pool.shutdown();
+			explored = visited.size();
+		}
+		if (found.get() == null) {
+			return null;
+		}
+		return FrontierSearch.pathTo(found.get());
+	}
+
+	public long getExplored() {
+		return explored;
+	}
+
+	/**
+	 * The per-thread state of a worker: its own board, key buffer and move list.
+	 */
+	private static class Worker {
+		private final Tray tray;
+		private final ConcurrentVisitedSet visited;
+		private final long[] key;
+		private final MoveList moves = new MoveList();
+		/**Successors generated so far; read between layers**/
+		private volatile long generated;
+
+		Worker(Tray tray, ConcurrentVisitedSet visited) {
+			this.tray = tray;
+			this.visited = visited;
+			key = new long[tray.keyLength()];
+		}
+
+		/**
+		 * Adds the unvisited successors of a node to next, returning the first
+		 * that satisfies the goal, if any.
+		 */
+		SearchNode expand(SearchNode node, List<SearchNode> next) {
+			visited.getKey(node.getState(), key);
+			tray.load(key);
+			tray.getMoves(moves);
+			generated += moves.size();
+			for (int i = 0; i < moves.size(); i++) {
+				long move = moves.get(i);
+				tray.makeMove(move);
+				tray.encode(key);
+				int state = visited.add(key, tray.hash());
+				SearchNode child = null;
+				if (state >= 0) {
+					child = new SearchNode(node, move, state, 0);
+					next.add(child);
+				}
+				boolean goal = child != null && tray.equalsGoal();
+				tray.undoMove(move);
+				if (goal) {
+					return child;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Expands layer[from, to), splitting the range in half until it is small.
+	 */
+	private static class Expand extends RecursiveTask<ArrayList<SearchNode>> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<SearchNode> layer;
+		private final int from;
+		private final int to;
+		private final ThreadLocal<Worker> workers;
+		private final AtomicReference<SearchNode> found;
+
+		Expand(List<SearchNode> layer, int from, int to, ThreadLocal<Worker> workers,
+				AtomicReference<SearchNode> found) {
+			this.layer = layer;
+			this.from = from;
+			this.to = to;
+			this.workers = workers;
+			this.found = found;
+		}
+
+		protected ArrayList<SearchNode> compute() {
+			if (to - from > CHUNK) {
+				int middle = (from + to) >>> 1;
+				Expand left = new Expand(layer, from, middle, workers, found);
+				left.fork();
+				ArrayList<SearchNode> right = new Expand(layer, middle, to, workers, found).compute();
+				ArrayList<SearchNode> result = left.join();
+				result.addAll(right);
+				return result;
+			}
+			ArrayList<SearchNode> next = new ArrayList<SearchNode>();
+			Worker worker = workers.get();
+			for (int i = from; i < to && found.get() == null; i++) {
+				SearchNode goal = worker.expand(layer.get(i), next);
+				if (goal != null) {
+					found.compareAndSet(null, goal);
+				}
+			}
+			return next;
+		}
+	}
+}
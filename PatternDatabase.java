@@ -0,0 +1,521 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * A table of exact distances to the goal in a simplified version of a puzzle: the
+ * same tray with only some of its blocks (the pattern), the others taken away.
+ * Every real solution is also a solution of the simplified puzzle once the moves
+ * of the missing blocks are dropped, so the simplified distance never overestimates
+ * the real one, yet it sees how the big blocks get in each other's way. A simplified
+ * configuration that is not in the table cannot reach the goal at all, and neither
+ * can any configuration it stands for.
+ *
+ * The pattern is the whole puzzle if that is small enough (the table then holds
+ * exact distances); otherwise every block of a size the goal mentions plus every
+ * block bigger than 1x1; otherwise only the sizes the goal mentions. A pattern is
+ * too big if it may have more than MAX_STATES configurations or its configurations
+ * do not pack into MAX_KEY_LENGTH longs. The table is built by a breadth-first search backwards from every
+ * simplified configuration that meets the goal (moves can always be undone, so
+ * backwards moves are ordinary moves), and written to a file named after the tray
+ * shape, pattern and goal, so it is built once and then shared by every puzzle
+ * with that shape. The file is an open-addressing hash table that lookups read
+ * through a memory map, without loading it.
+ *
+ * Build the tables ahead of time with
+ *
+ * 		java PatternDatabase <directory> <initial configuration> <goal>
+ *
+ * or let -hpattern build any missing ones on first use.
+ */
+public class PatternDatabase {
+
+	/**The score of a configuration that cannot reach the goal.**/
+	public static final int DEAD_END = 1 << 16;
+
+	/**Patterns with more simplified configurations than this are not built.**/
+	public static final int MAX_STATES = 1 << 20;
+
+	/**Patterns whose configurations take more longs than this are not built.**/
+	public static final int MAX_KEY_LENGTH = 4;
+
+	private static final long MAGIC = 0x5344424C4B504442L;
+	private static final int MAX_DISTANCE = 254;
+	private static final Map<File, PatternDatabase> cache = new HashMap<File, PatternDatabase>();
+
+	private final StateEncoder encoder;
+	private final int capacity;
+	private final int keyLength;
+	private final LongBuffer keys;
+	private final ByteBuffer distances;
+
+	private PatternDatabase(StateEncoder encoder, int capacity, LongBuffer keys, ByteBuffer distances) {
+		this.encoder = encoder;
+		this.capacity = capacity;
+		keyLength = encoder.keyLength();
+		this.keys = keys;
+		this.distances = distances;
+	}
+
+	/**
+	 * Returns the encoding of the pattern's configurations.
+	 */
+	public StateEncoder getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * Returns the number of moves from a pattern configuration to the goal, or
+	 * DEAD_END if it cannot reach the goal.
+	 *
+	 * @param key	the configuration, packed by getEncoder().
+	 */
+	public int distance(long[] key) {
+		int slot = (int) VisitedSet.hash(key) & (capacity - 1);
+		while (true) {
+			int stored = distances.get(slot) & 0xFF;
+			if (stored == 0) {
+				return DEAD_END;
+			}
+			boolean same = true;
+			for (int i = 0; same && i < keyLength; i++) {
+				same = keys.get(slot * keyLength + i) == key[i];
+			}
+			if (same) {
+				return stored - 1;
+			}
+			slot = (slot + 1) & (capacity - 1);
+		}
+	}
+
+	/**
+	 * Returns the pattern database for a puzzle, reading it from dir or building
+	 * and saving it there first. Databases already open are shared.
+	 *
+	 * @param puzzle	the puzzle.
+	 * @param counts	the number of blocks of each size class of the puzzle.
+	 * @param dir		the directory the tables are kept in.
+	 * @return			the database, or null if every pattern has too many configurations.
+	 * @throws IOException	if a table cannot be read or written.
+	 */
+	public static PatternDatabase open(Puzzle puzzle, int[] counts, File dir) throws IOException {
+		StateEncoder real = puzzle.getEncoder();
+		boolean[] inGoal = new boolean[real.classCount()];
+		List<int[]> goal = new ArrayList<int[]>();
+		for (int[] goalBlock : puzzle.getGoal()) {
+			// a goal file may repeat a line, which build must only see once
+			if (puzzle.fits(goalBlock) && !contains(goal, goalBlock)) {
+				inGoal[real.sizeClass(goalBlock[0], goalBlock[1])] = true;
+				goal.add(goalBlock);
+			}
+		}
+		if (goal.isEmpty()) {
+			return null;
+		}
+		boolean[] big = new boolean[real.classCount()];
+		for (int c = 0; c < big.length; c++) {
+			big[c] = inGoal[c] || real.classLength(c) * real.classWidth(c) > 1;
+		}
+		boolean[] all = new boolean[real.classCount()];
+		Arrays.fill(all, true);
+		for (boolean[] kept : Arrays.asList(all, big, inGoal)) {
+			// Two bounds on the number of configurations: the ways to place each class
+			// on its own, and the orders of blocks and empty cells in reading order
+			// (a configuration is fixed by the order its blocks' corners and its empty
+			// cells come in).
+			List<int[]> sizes = new ArrayList<int[]>();
+			double placements = 1;
+			double orders = 1;
+			int items = 0;
+			int empty = puzzle.getLength() * puzzle.getWidth();
+			for (int c = 0; c < kept.length; c++) {
+				if (kept[c]) {
+					int places = (puzzle.getLength() - real.classLength(c) + 1) * (puzzle.getWidth() - real.classWidth(c) + 1);
+					for (int i = 0; i < counts[c]; i++) {
+						sizes.add(new int[] {real.classLength(c), real.classWidth(c)});
+						placements = placements * (places - i) / (i + 1);
+						orders = orders * ++items / (i + 1);
+						empty -= real.classLength(c) * real.classWidth(c);
+					}
+				}
+			}
+			for (int i = 1; i <= empty; i++) {
+				orders = orders * ++items / i;
+			}
+			if (Math.min(placements, orders) > 16.0 * MAX_STATES
+					|| encoderOf(puzzle.getLength(), puzzle.getWidth(), sizes).keyLength() > MAX_KEY_LENGTH) {
+				continue;
+			}
+			PatternDatabase database = open(puzzle.getLength(), puzzle.getWidth(), sizes, goal, dir);
+			if (database != null) {
+				return database;
+			}
+		}
+		return null;
+	}
+
+	private static boolean contains(List<int[]> blocks, int[] block) {
+		for (int[] other : blocks) {
+			if (Arrays.equals(other, block)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the pattern database of a tray shape, pattern and goal, reading it
+	 * from dir or building it there first.
+	 *
+	 * @return	the database, or null if the pattern has too many configurations.
+	 */
+	private static PatternDatabase open(int length, int width, List<int[]> sizes, List<int[]> goal, File dir)
+			throws IOException {
+		int[] signature = signature(length, width, sizes, goal);
+		long name = 0;
+		for (int value : signature) {
+			name = (name ^ value) * 0x100000001B3L;
+		}
+		File file = new File(dir, "pdb-" + Long.toHexString(name) + ".table");
+		synchronized (cache) {
+			if (cache.containsKey(file)) {
+				return cache.get(file);
+			}
+			if (!file.isFile()) {
+				write(file, signature, build(length, width, sizes, goal));
+			}
+			PatternDatabase database = read(file, signature, length, width, sizes);
+			cache.put(file, database);
+			return database;
+		}
+	}
+
+	/**
+	 * Describes a pattern database completely: the tray's dimensions, then the
+	 * sorted {length, width} of the pattern's blocks, then the sorted goal blocks
+	 * of the pattern.
+	 */
+	private static int[] signature(int length, int width, List<int[]> sizes, List<int[]> goal) {
+		List<int[]> blocks = new ArrayList<int[]>(sizes);
+		List<int[]> goalBlocks = new ArrayList<int[]>(goal);
+		Comparator<int[]> order = new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				for (int i = 0; i < a.length; i++) {
+					if (a[i] != b[i]) {
+						return a[i] < b[i] ? -1 : 1;
+					}
+				}
+				return 0;
+			}
+		};
+		Collections.sort(blocks, order);
+		Collections.sort(goalBlocks, order);
+		int[] signature = new int[4 + 2 * blocks.size() + 4 * goalBlocks.size()];
+		int i = 0;
+		signature[i++] = length;
+		signature[i++] = width;
+		signature[i++] = blocks.size();
+		for (int[] block : blocks) {
+			signature[i++] = block[0];
+			signature[i++] = block[1];
+		}
+		signature[i++] = goalBlocks.size();
+		for (int[] goalBlock : goalBlocks) {
+			for (int k = 0; k < 4; k++) {
+				signature[i++] = goalBlock[k];
+			}
+		}
+		return signature;
+	}
+
+	/**
+	 * Returns the encoding of the configurations of a pattern.
+	 *
+	 * @param sizes	{length, width} of every block of the pattern.
+	 */
+	private static StateEncoder encoderOf(int length, int width, List<int[]> sizes) {
+		int[] lengths = new int[sizes.size()];
+		int[] widths = new int[sizes.size()];
+		for (int i = 0; i < sizes.size(); i++) {
+			lengths[i] = sizes.get(i)[0];
+			widths[i] = sizes.get(i)[1];
+		}
+		return new StateEncoder(length, width, lengths, widths);
+	}
+
+	/**
+	 * Searches backwards from every pattern configuration that meets the goal.
+	 *
+	 * @return	{keys, distances} of every configuration found, keys packed back to
+	 * 			back and distances as bytes, or null if there are more than
+	 * 			MAX_STATES configurations.
+	 */
+	private static Object[] build(int length, int width, List<int[]> sizes, List<int[]> goal) {
+		// the goal blocks are fixed, the other pattern blocks go anywhere they fit
+		List<int[]> free = new ArrayList<int[]>(sizes);
+		for (int[] goalBlock : goal) {
+			boolean found = false;
+			for (int i = 0; i < free.size() && !found; i++) {
+				if (free.get(i)[0] == goalBlock[0] && free.get(i)[1] == goalBlock[1]) {
+					free.remove(i);
+					found = true;
+				}
+			}
+			if (!found) {
+				return new Object[] {new long[0], new byte[0]};
+			}
+		}
+		Collections.sort(free, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return a[0] != b[0] ? a[0] - b[0] : a[1] - b[1];
+			}
+		});
+		StateEncoder encoder = encoderOf(length, width, sizes);
+		VisitedSet visited = new VisitedSet(encoder.keyLength());
+		boolean[] covered = new boolean[length * width];
+		int[] codes = new int[sizes.size()];
+		int placed = 0;
+		for (int[] goalBlock : goal) {
+			if (!cover(covered, width, goalBlock[2], goalBlock[3], goalBlock[0], goalBlock[1], true)) {
+				return new Object[] {new long[0], new byte[0]};
+			}
+			codes[placed++] = encoder.code(encoder.sizeClass(goalBlock[0], goalBlock[1]), goalBlock[2], goalBlock[3]);
+		}
+		int[] first = new int[sizes.size()];
+		if (!placeRest(encoder, visited, covered, free, 0, 0, codes, placed, first)) {
+			return null;
+		}
+		if (visited.size() == 0) {
+			return new Object[] {new long[0], new byte[0]};
+		}
+		List<int[]> blocks = new ArrayList<int[]>();
+		for (int code : first) {
+			int c = encoder.classOf(code);
+			blocks.add(new int[] {encoder.classLength(c), encoder.classWidth(c), encoder.rowOf(code), encoder.colOf(code)});
+		}
+		SolverOptions options = new SolverOptions();
+		options.setMoveMode(Tray.UNIT_MOVES);
+		Tray tray = new Tray(length, width, blocks, goal, options);
+		long[] key = new long[encoder.keyLength()];
+		MoveList moves = new MoveList();
+		byte[] distance = new byte[Math.max(16, visited.size() * 2)];
+		for (int state = 0; state < visited.size(); state++) {
+			int next = Math.min((distance[state] & 0xFF) + 1, MAX_DISTANCE);
+			visited.getKey(state, key);
+			tray.load(key);
+			tray.getMoves(moves);
+			for (int i = 0; i < moves.size(); i++) {
+				tray.makeMove(moves.get(i));
+				tray.encode(key);
+				int added = visited.add(key, tray.hash());
+				if (added >= 0) {
+					if (visited.size() > MAX_STATES) {
+						return null;
+					}
+					if (added >= distance.length) {
+						distance = Arrays.copyOf(distance, distance.length * 2);
+					}
+					distance[added] = (byte) next;
+				}
+				tray.undoMove(moves.get(i));
+			}
+		}
+		long[] keys = new long[visited.size() * encoder.keyLength()];
+		for (int state = 0; state < visited.size(); state++) {
+			visited.getKey(state, key);
+			System.arraycopy(key, 0, keys, state * key.length, key.length);
+		}
+		return new Object[] {keys, Arrays.copyOf(distance, visited.size())};
+	}
+
+	/**
+	 * Places the free pattern blocks from index i on in every way that fits,
+	 * adding each complete configuration to visited. Blocks of the same size are
+	 * placed in increasing order of position so each configuration is made once.
+	 *
+	 * @param from	the first cell the block at index i may go to.
+	 * @param first	receives the codes of the first configuration added.
+	 * @return		false if there are more than MAX_STATES configurations.
+	 */
+	private static boolean placeRest(StateEncoder encoder, VisitedSet visited, boolean[] covered, List<int[]> free,
+			int i, int from, int[] codes, int placed, int[] first) {
+		if (i == free.size()) {
+			int[] sorted = codes.clone();
+			Arrays.sort(sorted);
+			long[] key = new long[encoder.keyLength()];
+			encoder.pack(sorted, key);
+			if (visited.add(key, StateEncoder.hash(sorted)) == 0) {
+				System.arraycopy(sorted, 0, first, 0, sorted.length);
+			}
+			return visited.size() <= MAX_STATES;
+		}
+		int length = free.get(i)[0];
+		int width = free.get(i)[1];
+		int trayWidth = encoder.trayWidth();
+		for (int cell = from; cell < covered.length; cell++) {
+			int row = cell / trayWidth;
+			int col = cell % trayWidth;
+			if (cover(covered, trayWidth, row, col, length, width, true)) {
+				codes[placed] = encoder.code(encoder.sizeClass(length, width), row, col);
+				boolean same = i + 1 < free.size() && free.get(i + 1)[0] == length && free.get(i + 1)[1] == width;
+				boolean fits = placeRest(encoder, visited, covered, free, i + 1, same ? cell + 1 : 0, codes, placed + 1, first);
+				cover(covered, trayWidth, row, col, length, width, false);
+				if (!fits) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Marks (or unmarks) the cells of a block. When marking, returns false and
+	 * changes nothing if the block does not fit in the tray or overlaps a mark.
+	 */
+	private static boolean cover(boolean[] covered, int trayWidth, int row, int col, int length, int width, boolean mark) {
+		int trayLength = covered.length / trayWidth;
+		if (mark) {
+			if (row < 0 || col < 0 || row + length > trayLength || col + width > trayWidth) {
+				return false;
+			}
+			for (int i = row; i < row + length; i++) {
+				for (int j = col; j < col + width; j++) {
+					if (covered[i * trayWidth + j]) {
+						return false;
+					}
+				}
+			}
+		}
+		for (int i = row; i < row + length; i++) {
+			for (int j = col; j < col + width; j++) {
+				covered[i * trayWidth + j] = mark;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes a table built by build, or an empty marker if the pattern was too big,
+	 * to a temporary file that is then renamed, so readers never see half a table.
+	 */
+	private static void write(File file, int[] signature, Object[] table) throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		int keyLength = 0;
+		int capacity = 0;
+		long[] keys = null;
+		byte[] distance = null;
+		if (table != null) {
+			keys = (long[]) table[0];
+			distance = (byte[]) table[1];
+			keyLength = distance.length == 0 ? 0 : keys.length / distance.length;
+			capacity = 1;
+			while (capacity < distance.length * 2) {
+				capacity <<= 1;
+			}
+		}
+		long[] slots = new long[capacity * keyLength];
+		byte[] stored = new byte[capacity];
+		long[] key = new long[keyLength];
+		for (int state = 0; table != null && state < distance.length; state++) {
+			System.arraycopy(keys, state * keyLength, key, 0, keyLength);
+			int slot = (int) VisitedSet.hash(key) & (capacity - 1);
+			while (stored[slot] != 0) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			System.arraycopy(key, 0, slots, slot * keyLength, keyLength);
+			stored[slot] = (byte) ((distance[state] & 0xFF) + 1);
+		}
+		File temp = File.createTempFile("pdb", ".tmp", dir);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeLong(MAGIC);
+			out.writeInt(signature.length);
+			for (int value : signature) {
+				out.writeInt(value);
+			}
+			if (signature.length % 2 == 0) {
+				out.writeInt(0);
+			}
+			out.writeInt(keyLength);
+			out.writeInt(capacity);
+			for (long value : slots) {
+				out.writeLong(value);
+			}
+			out.write(stored);
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+			if (!file.isFile()) {
+				throw new IOException("Cannot write " + file);
+			}
+		}
+	}
+
+	/**
+	 * Maps a table written by write.
+	 *
+	 * @return	the database, or null if the file marks a pattern that was too big
+	 * 			or holds no configurations. An empty table would score every
+	 * 			configuration as a dead end, so it is never used.
+	 */
+	private static PatternDatabase read(File file, int[] signature, int length, int width, List<int[]> sizes)
+			throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			MappedByteBuffer map = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+			boolean valid = map.getLong() == MAGIC && map.getInt() == signature.length;
+			for (int i = 0; valid && i < signature.length; i++) {
+				valid = map.getInt() == signature[i];
+			}
+			if (!valid) {
+				throw new IOException(file + " is not the pattern database it should be; delete it to rebuild it.");
+			}
+			if (signature.length % 2 == 0) {
+				map.getInt();
+			}
+			int keyLength = map.getInt();
+			int capacity = map.getInt();
+			if (capacity == 0 || keyLength == 0) {
+				return null;
+			}
+			StateEncoder encoder = encoderOf(length, width, sizes);
+			if (keyLength != encoder.keyLength()) {
+				throw new IOException(file + " is not the pattern database it should be; delete it to rebuild it.");
+			}
+			int keysAt = map.position();
+			map.position(keysAt + capacity * keyLength * 8);
+			ByteBuffer distances = map.slice();
+			map.position(keysAt);
+			LongBuffer keys = map.slice().asLongBuffer();
+			return new PatternDatabase(encoder, capacity, keys, distances);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Builds the pattern database of a puzzle ahead of time.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			throw new IllegalArgumentException("Usage: java PatternDatabase <directory> <initial configuration> <goal>");
+		}
+		long start = System.nanoTime();
+		Tray tray = new Tray(args[1], args[2]);
+		int[] counts = tray.classCounts();
+		PatternDatabase database = open(tray.getPuzzle(), counts, new File(args[0]));
+		long ms = (System.nanoTime() - start) / 1000000;
+		if (database == null) {
+			System.out.println("No pattern of this puzzle is small enough (" + ms + "ms)");
+		} else {
+			System.out.println(database.encoder.blockCount() + " pattern blocks, "
+					+ database.capacity + " slots (" + ms + "ms)");
+		}
+	}
+}
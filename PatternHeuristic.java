@@ -0,0 +1,113 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Looks the configuration of the pattern blocks up in the puzzle's PatternDatabase,
+ * and takes the larger of that distance and the blocking estimate of
+ * AssignmentHeuristic; both are admissible, so their maximum is too. The pattern
+ * blocks' codes are kept sorted in the database's encoding as blocks move, and
+ * packed for a lookup only when a score is asked for. Puzzles whose patterns are
+ * all too big use the blocking estimate alone.
+ */
+public class PatternHeuristic implements Heuristic {
+
+	private final Puzzle puzzle;
+	private final File dir;
+	private final Heuristic fallback;
+	private PatternDatabase database;
+	/**For each size class of the puzzle, the class in the pattern or -1**/
+	private int[] patternClass;
+	private int[] codes;
+	private long[] key;
+	private boolean dirty;
+	private int distance;
+
+	/**
+	 * @param puzzle	the puzzle whose goal to measure against.
+	 * @param dir		the directory the pattern databases are kept in.
+	 */
+	public PatternHeuristic(Puzzle puzzle, File dir) {
+		this.puzzle = puzzle;
+		this.dir = dir;
+		fallback = new AssignmentHeuristic(puzzle, true);
+	}
+
+	private PatternHeuristic(PatternHeuristic other) {
+		puzzle = other.puzzle;
+		dir = other.dir;
+		fallback = other.fallback.copy();
+		database = other.database;
+		patternClass = other.patternClass;
+		codes = other.codes == null ? null : other.codes.clone();
+		key = other.key == null ? null : other.key.clone();
+		dirty = other.dirty;
+		distance = other.distance;
+	}
+
+	public void reset(int[] codes) {
+		fallback.reset(codes);
+		StateEncoder encoder = puzzle.getEncoder();
+		if (patternClass == null) {
+			int[] counts = new int[encoder.classCount()];
+			for (int code : codes) {
+				counts[encoder.classOf(code)]++;
+			}
+			try {
+				database = PatternDatabase.open(puzzle, counts, dir);
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot use the pattern database: " + e.getMessage(), e);
+			}
+			patternClass = new int[encoder.classCount()];
+			for (int c = 0; c < patternClass.length; c++) {
+				patternClass[c] = database == null ? -1
+						: database.getEncoder().sizeClass(encoder.classLength(c), encoder.classWidth(c));
+			}
+		}
+		if (database == null) {
+			return;
+		}
+		this.codes = new int[database.getEncoder().blockCount()];
+		key = new long[database.getEncoder().keyLength()];
+		int n = 0;
+		for (int code : codes) {
+			int c = patternClass[encoder.classOf(code)];
+			if (c >= 0) {
+				this.codes[n++] = database.getEncoder().code(c, encoder.rowOf(code), encoder.colOf(code));
+			}
+		}
+		Arrays.sort(this.codes);
+		dirty = true;
+	}
+
+	public void moved(int oldCode, int newCode) {
+		fallback.moved(oldCode, newCode);
+		if (database == null) {
+			return;
+		}
+		StateEncoder encoder = puzzle.getEncoder();
+		int c = patternClass[encoder.classOf(oldCode)];
+		if (c >= 0) {
+			StateEncoder pattern = database.getEncoder();
+			StateEncoder.replace(codes, pattern.code(c, encoder.rowOf(oldCode), encoder.colOf(oldCode)),
+					pattern.code(c, encoder.rowOf(newCode), encoder.colOf(newCode)));
+			dirty = true;
+		}
+	}
+
+	public int score() {
+		int score = fallback.score();
+		if (database == null) {
+			return score;
+		}
+		if (dirty) {
+			database.getEncoder().pack(codes, key);
+			distance = database.distance(key);
+			dirty = false;
+		}
+		return Math.max(score, distance);
+	}
+
+	public Heuristic copy() {
+		return new PatternHeuristic(this);
+	}
+}
@@ -0,0 +1,171 @@
+import java.util.*;
+
+/**
+ * Everything a solve needs besides the board itself: the tray's dimensions, the
+ * canonical encoding of its blocks, the goal, and the options it was started with.
+ * Every Tray of one solve shares one Puzzle, and a Puzzle never changes once it is
+ * made, so no state is shared between solves and any number of them can run at
+ * once in one JVM. The one exception is the SearchStats the solve's search reports
+ * its progress to.
+ */
+public class Puzzle {
+
+	private final int trayLength;
+	private final int trayWidth;
+	private final StateEncoder encoder;
+	private final List<int[]> goalBlocks;
+	private final SolverOptions options;
+	private final int symmetries;
+	/**Goal index: for each cell, 1 + the size class of the goal block whose upper left corner is there (0 for none), and the number of goal blocks**/
+	private final int[] goalClass;
+	private final int goalCount;
+	private final SearchStats stats = new SearchStats();
+
+	/**
+	 * @param length	the number of rows in the tray.
+	 * @param width		the number of columns in the tray.
+	 * @param encoder	the encoding of the tray's configurations.
+	 * @param goal		{length, width, row, col} of every goal block.
+	 * @param options	the options of the solve.
+	 */
+	public Puzzle(int length, int width, StateEncoder encoder, List<int[]> goal, SolverOptions options) {
+		trayLength = length;
+		trayWidth = width;
+		this.encoder = encoder;
+		goalBlocks = Collections.unmodifiableList(new ArrayList<int[]>(goal));
+		this.options = options;
+		symmetries = findSymmetries();
+		goalClass = new int[length * width];
+		int count = 0;
+		for (int[] goalBlock : goalBlocks) {
+			if (!fits(goalBlock)) {
+				count = -1;
+				break;
+			}
+			int c = encoder.sizeClass(goalBlock[0], goalBlock[1]) + 1;
+			int cell = goalBlock[2] * width + goalBlock[3];
+			if (goalClass[cell] == 0) {
+				goalClass[cell] = c;
+				count++;
+			} else if (goalClass[cell] != c) {
+				// two goal blocks of different sizes in one place: they overlap
+				count = -1;
+				break;
+			}
+		}
+		goalCount = count;
+	}
+
+	public int getLength() {
+		return trayLength;
+	}
+
+	public int getWidth() {
+		return trayWidth;
+	}
+
+	public StateEncoder getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * Returns {length, width, row, col} of every goal block. The arrays must not be changed.
+	 */
+	public List<int[]> getGoal() {
+		return goalBlocks;
+	}
+
+	/**
+	 * Returns true if a goal block could be satisfied at all: the tray has blocks
+	 * of its size and it lies inside the tray.
+	 *
+	 * @param goalBlock	{length, width, row, col} of the goal block.
+	 */
+	public boolean fits(int[] goalBlock) {
+		return encoder.sizeClass(goalBlock[0], goalBlock[1]) >= 0 && goalBlock[2] >= 0 && goalBlock[3] >= 0
+				&& goalBlock[2] + goalBlock[0] <= trayLength && goalBlock[3] + goalBlock[1] <= trayWidth;
+	}
+
+	/**
+	 * Returns true if the goal asks for a block of this code (see StateEncoder):
+	 * a block of that size with its upper left corner at that place.
+	 */
+	public boolean isGoalCode(int code) {
+		int cells = goalClass.length;
+		return goalClass[code % cells] == code / cells + 1;
+	}
+
+	/**
+	 * Returns the number of goal blocks, not counting repeated lines, which is the
+	 * number of blocks that must be on goal codes for the goal to be met; or -1 if
+	 * the goal can never be met because a goal block does not fit (see fits) or two
+	 * start in the same place.
+	 */
+	public int getGoalCount() {
+		return goalCount;
+	}
+
+	/**
+	 * Returns the mirror images that leave the goal unchanged, as a mask with bit
+	 * t set for each transform t (see mirror).
+	 */
+	public int getSymmetries() {
+		return symmetries;
+	}
+
+	/**
+	 * Returns the code (see StateEncoder) of a block in a mirror image of the tray.
+	 * Transform 1 mirrors left to right, 2 top to bottom, and 3 does both (a half
+	 * turn); 0 changes nothing.
+	 *
+	 * @param transform	the mirror image.
+	 * @param code		the block's code.
+	 */
+	public int mirror(int transform, int code) {
+		int c = encoder.classOf(code);
+		int row = encoder.rowOf(code);
+		int col = encoder.colOf(code);
+		if ((transform & 1) != 0) {
+			col = trayWidth - encoder.classWidth(c) - col;
+		}
+		if ((transform & 2) != 0) {
+			row = trayLength - encoder.classLength(c) - row;
+		}
+		return encoder.code(c, row, col);
+	}
+
+	private int findSymmetries() {
+		int[] goal = new int[goalBlocks.size()];
+		for (int g = 0; g < goal.length; g++) {
+			int[] goalBlock = goalBlocks.get(g);
+			if (!fits(goalBlock)) {
+				return 0;
+			}
+			goal[g] = encoder.code(encoder.sizeClass(goalBlock[0], goalBlock[1]), goalBlock[2], goalBlock[3]);
+		}
+		Arrays.sort(goal);
+		int result = 0;
+		for (int t = 1; t < 4; t++) {
+			int[] mirrored = new int[goal.length];
+			for (int g = 0; g < goal.length; g++) {
+				mirrored[g] = mirror(t, goal[g]);
+			}
+			Arrays.sort(mirrored);
+			if (Arrays.equals(goal, mirrored)) {
+				result |= 1 << t;
+			}
+		}
+		return result;
+	}
+
+	public SolverOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * Returns the counters the search of this puzzle reports to.
+	 */
+	public SearchStats getStats() {
+		return stats;
+	}
+}
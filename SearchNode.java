@@ -0,0 +1,82 @@
+/**
+ * A configuration reached during the search. Instead of a whole Tray, a node only
+ * keeps the move that produced it from its parent and the index of its encoding in
+ * the visited set; the solver loads the configuration back into its one mutable
+ * Tray when the node is expanded.
+ *
+ * ParallelBreadthFirstSearch's workers create nodes on many threads at once and
+ * use these objects; the other searches keep the same fields in a NodeArena.
+ */
+public class SearchNode implements Comparable<SearchNode> {
+
+	private final SearchNode myParent;
+	private final long myMove;
+	private final int myState;
+	private final int myDepth;
+	private final int myScore;
+	private final int myTransform;
+
+	/**
+	 * @param parent	the node this one was reached from, or null for the initial tray.
+	 * @param move		the move from the parent's configuration to this one.
+	 * @param state		the index of this configuration in the visited set.
+	 * @param score		the priority of this node on the fringe.
+	 */
+	public SearchNode(SearchNode parent, long move, int state, int score) {
+		this(parent, move, state, score, 0);
+	}
+
+	/**
+	 * @param parent	the node this one was reached from, or null for the initial tray.
+	 * @param move		the move from the parent's configuration to this one.
+	 * @param state		the index of this configuration in the visited set.
+	 * @param score		the priority of this node on the fringe.
+	 * @param transform	the mirror image (see Puzzle.mirror) the configuration is
+	 * 					of the one stored at state.
+	 */
+	public SearchNode(SearchNode parent, long move, int state, int score, int transform) {
+		myParent = parent;
+		myMove = move;
+		myState = state;
+		myDepth = parent == null ? 0 : parent.myDepth + 1;
+		myScore = score;
+		myTransform = transform;
+	}
+
+	public SearchNode getParent() {
+		return myParent;
+	}
+
+	public long getMove() {
+		return myMove;
+	}
+
+	public int getState() {
+		return myState;
+	}
+
+	/**
+	 * Returns the mirror image the node's configuration is of the stored one.
+	 */
+	public int getTransform() {
+		return myTransform;
+	}
+
+	/**
+	 * Returns the number of moves from the initial tray.
+	 */
+	public int getDepth() {
+		return myDepth;
+	}
+
+	public int getScore() {
+		return myScore;
+	}
+
+	/**
+	 * Compares scores to determine the node's location on a priority queue.
+	 */
+	public int compareTo(SearchNode other) {
+		return myScore - other.myScore;
+	}
+}
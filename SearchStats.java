@@ -0,0 +1,200 @@
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * The counters of one solve's search: configurations expanded, successors
+ * generated, duplicates among them and the size of the frontier.
+ *
+ * A search counts in local variables and hands the totals over with report every
+ * so often (every 1024 expansions, or once a layer), so counting costs it next
+ * to nothing whether or not anyone is watching. While a search runs with -i, a
+ * background thread samples the counters and the heap at a fixed interval, works
+ * out the expansion rate and the heap per stored configuration, and prints each
+ * sample as a line of JSON to the standard error; the counters are also
+ * registered as an MXBean (see SearchStatsMXBean) named
+ *
+ * 		SlidingBlockSolver:type=SearchStats,id=<n>
+ *
+ * for as long as the search runs.
+ */
+public class SearchStats implements SearchStatsMXBean {
+
+	private static final AtomicInteger ids = new AtomicInteger();
+
+	/**Reported by the search**/
+	private volatile long expanded;
+	private volatile long generated;
+	private volatile long duplicates;
+	private volatile long frontier;
+
+	/**Worked out by the sampler**/
+	private volatile String strategy = "";
+	private volatile long startTime;
+	private volatile double rate;
+	private volatile long heap;
+	private volatile long peakHeap;
+	private long lastExpanded;
+	private long lastTime;
+
+	private ScheduledExecutorService sampler;
+	private ObjectName name;
+	private PrintStream out;
+
+	/**
+	 * Records the search's totals so far. Called by the search thread only.
+	 *
+	 * @param expanded		configurations expanded.
+	 * @param generated		successors generated, duplicates included.
+	 * @param duplicates	successors that had already been seen.
+	 * @param frontier		configurations waiting to be expanded.
+	 */
+	public void report(long expanded, long generated, long duplicates, long frontier) {
+		this.expanded = expanded;
+		this.generated = generated;
+		this.duplicates = duplicates;
+		this.frontier = frontier;
+	}
+
+	/**
+	 * Starts sampling a search, unless interval is 0.
+	 *
+	 * @param search	the search about to run.
+	 * @param interval	the time between samples, in milliseconds, or 0 not to sample.
+	 * @param out		where to print the samples, or null only to register the MXBean.
+	 */
+	public synchronized void start(SearchStrategy search, long interval, PrintStream out) {
+		strategy = search.getClass().getName();
+		startTime = System.currentTimeMillis();
+		lastTime = startTime;
+		lastExpanded = 0;
+		report(0, 0, 0, 0);
+		if (interval <= 0 || sampler != null) {
+			return;
+		}
+		this.out = out;
+		try {
+			name = new ObjectName("SlidingBlockSolver:type=SearchStats,id=" + ids.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		} catch (JMException e) {
+			name = null;
+			System.err.println("Cannot register search statistics: " + e.getMessage());
+		}
+		sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "search-stats");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		sampler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				sample();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops sampling, printing a last sample and unregistering the MXBean.
+	 */
+	public void stop() {
+		ScheduledExecutorService stopping;
+		synchronized (this) {
+			stopping = sampler;
+			sampler = null;
+		}
+		if (stopping == null) {
+			return;
+		}
+		stopping.shutdown();
+		try {
+			stopping.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		sample();
+		synchronized (this) {
+			if (name != null) {
+				try {
+					ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+				} catch (JMException e) {
+					// already gone
+				}
+				name = null;
+			}
+		}
+	}
+
+	/**
+	 * Takes a sample: the heap and the rate since the last sample, printed if
+	 * there is somewhere to print.
+	 */
+	private synchronized void sample() {
+		long now = System.currentTimeMillis();
+		long count = expanded;
+		if (now > lastTime) {
+			rate = (count - lastExpanded) * 1000.0 / (now - lastTime);
+		}
+		lastTime = now;
+		lastExpanded = count;
+		Runtime runtime = Runtime.getRuntime();
+		heap = runtime.totalMemory() - runtime.freeMemory();
+		peakHeap = Math.max(peakHeap, heap);
+		if (out != null) {
+			out.println(toJson());
+		}
+	}
+
+	/**
+	 * Returns the counters and the last sample as one line of JSON.
+	 */
+	public String toJson() {
+		return String.format(Locale.ROOT, "{\"strategy\": \"%s\", \"ms\": %d, \"expanded\": %d, \"generated\": %d, "
+				+ "\"duplicates\": %d, \"frontier\": %d, \"rate\": %.1f, \"heap\": %d, \"peakHeap\": %d, "
+				+ "\"bytesPerNode\": %.1f}", strategy, getElapsedMillis(), expanded, generated, duplicates,
+				frontier, rate, heap, peakHeap, getHeapBytesPerNode());
+	}
+
+	public String getStrategy() {
+		return strategy;
+	}
+
+	public long getElapsedMillis() {
+		return startTime == 0 ? 0 : System.currentTimeMillis() - startTime;
+	}
+
+	public long getExpanded() {
+		return expanded;
+	}
+
+	public long getGenerated() {
+		return generated;
+	}
+
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	public long getFrontier() {
+		return frontier;
+	}
+
+	public double getExpansionRate() {
+		return rate;
+	}
+
+	public long getHeapBytes() {
+		return heap;
+	}
+
+	public long getPeakHeapBytes() {
+		return peakHeap;
+	}
+
+	public double getHeapBytesPerNode() {
+		return (double) heap / Math.max(1, generated - duplicates + 1);
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * What SearchStats shows through JMX, so that a long search can be watched from
+ * JConsole or any other JMX client. Counts are as of the search's last report.
+ */
+public interface SearchStatsMXBean {
+
+	/**
+	 * Returns the class name of the search, or "" before it starts.
+	 */
+	String getStrategy();
+
+	long getElapsedMillis();
+
+	/**
+	 * Returns the number of configurations whose moves have been generated.
+	 */
+	long getExpanded();
+
+	/**
+	 * Returns the number of successors generated, duplicates included.
+	 */
+	long getGenerated();
+
+	/**
+	 * Returns the number of successors that had already been seen.
+	 */
+	long getDuplicates();
+
+	/**
+	 * Returns the number of configurations waiting to be expanded.
+	 */
+	long getFrontier();
+
+	/**
+	 * Returns the configurations expanded per second between the last two samples.
+	 */
+	double getExpansionRate();
+
+	/**
+	 * Returns the heap in use at the last sample, in bytes.
+	 */
+	long getHeapBytes();
+
+	/**
+	 * Returns the most heap in use at any sample, in bytes.
+	 */
+	long getPeakHeapBytes();
+
+	/**
+	 * Returns the heap in use at the last sample divided by the configurations
+	 * stored (the generated ones that were not duplicates).
+	 */
+	double getHeapBytesPerNode();
+}
@@ -0,0 +1,22 @@
+/**
+ * A way of searching for a sequence of moves from a tray's configuration to the goal.
+ * Strategies share the Tray successor API (getMoves/makeMove/undoMove/load) and
+ * keep their explored configurations in the canonical encoding, so they can be
+ * swapped per puzzle to trade solution length against time and memory.
+ */
+public interface SearchStrategy {
+
+	/**
+	 * Searches from the tray's current configuration to the goal. The tray is used as
+	 * the search's working board and is left in an unspecified configuration.
+	 *
+	 * @param tray	the initial tray configuration.
+	 * @return		the moves of a solution in order, or null if the goal cannot be reached.
+	 */
+	long[] search(Tray tray);
+
+	/**
+	 * Returns the number of configurations the last search visited.
+	 */
+	long getExplored();
+}
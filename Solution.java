@@ -0,0 +1,158 @@
+import java.io.*;
+
+/**
+ * The result of solving one puzzle: the moves from the initial configuration to
+ * the goal, or none at all if the goal could not be reached, with the reason.
+ */
+public class Solution {
+
+	/**The reason given when a search runs out of configurations**/
+	public static final String EXHAUSTED = "no configuration reachable from the initial one meets the goal";
+
+	private final long[] myMoves;
+	private final int myTrayWidth;
+	private final long myExplored;
+	private final String myReason;
+
+	/**
+	 * @param moves		the moves of the solution in order (see Move), or null if
+	 * 					there is no solution.
+	 * @param trayWidth	the number of columns in the tray, to decode the moves.
+	 */
+	public Solution(long[] moves, int trayWidth) {
+		this(moves, trayWidth, 0);
+	}
+
+	/**
+	 * @param moves		the moves of the solution in order (see Move), or null if
+	 * 					there is no solution.
+	 * @param trayWidth	the number of columns in the tray, to decode the moves.
+	 * @param explored	the number of configurations the search visited.
+	 */
+	public Solution(long[] moves, int trayWidth, long explored) {
+		this(moves, trayWidth, explored, moves == null ? EXHAUSTED : null);
+	}
+
+	private Solution(long[] moves, int trayWidth, long explored, String reason) {
+		myMoves = moves;
+		myTrayWidth = trayWidth;
+		myExplored = explored;
+		myReason = reason;
+	}
+
+	/**
+	 * Returns the result for a puzzle shown to have no solution without searching it.
+	 *
+	 * @param reason	why the goal cannot be reached (see Feasibility).
+	 * @param trayWidth	the number of columns in the tray.
+	 */
+	public static Solution unsolvable(String reason, int trayWidth) {
+		return new Solution(null, trayWidth, 0, reason);
+	}
+
+	public boolean isSolved() {
+		return myMoves != null;
+	}
+
+	/**
+	 * Returns why the puzzle has no solution, or null if it is solved.
+	 */
+	public String getReason() {
+		return myReason;
+	}
+
+	/**
+	 * Returns the moves of the solution, or null if there is none. A move may
+	 * cover several cells; see getStepCount.
+	 */
+	public long[] getMoves() {
+		return myMoves;
+	}
+
+	public int getTrayWidth() {
+		return myTrayWidth;
+	}
+
+	/**
+	 * Returns the number of configurations the search visited to find this solution.
+	 */
+	public long getExplored() {
+		return myExplored;
+	}
+
+	/**
+	 * Returns the number of one-cell moves in the solution.
+	 */
+	public int getStepCount() {
+		int steps = 0;
+		MoveList units = new MoveList();
+		for (long move : myMoves) {
+			units.clear();
+			Move.expand(move, myTrayWidth, units);
+			steps += units.size();
+		}
+		return steps;
+	}
+
+	/**
+	 * Prints the solution as the "row col row col" one-cell moves the Checker expects.
+	 *
+	 * @param out	where to print.
+	 */
+	public void print(PrintStream out) {
+		try {
+			write(out, SolutionWriter.TEXT);
+		} catch (IOException e) {
+			// a PrintStream keeps its errors to itself
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes the solution's one-cell moves in a SolutionWriter format and flushes
+	 * the stream, which is left open.
+	 *
+	 * @param out		where to write.
+	 * @param format	SolutionWriter.TEXT or SolutionWriter.BINARY.
+	 */
+	public void write(OutputStream out, int format) throws IOException {
+		SolutionWriter writer = new SolutionWriter(out, myTrayWidth, format);
+		writer.write(myMoves);
+		writer.flush();
+	}
+
+	/**
+	 * Replays the solution one cell at a time on a tray, the way the Checker does,
+	 * and tells whether every move is legal and the tray ends in its goal.
+	 *
+	 * @param initial	a tray in the initial configuration; it is left wherever the
+	 * 					replay stopped.
+	 * @return			true if the solution is correct for the tray.
+	 */
+	public boolean verify(Tray initial) {
+		if (myMoves == null) {
+			return false;
+		}
+		MoveList units = new MoveList();
+		for (long move : myMoves) {
+			units.clear();
+			Move.expand(move, myTrayWidth, units);
+			for (int i = 0; i < units.size(); i++) {
+				long unit = units.get(i);
+				int rows = Math.abs(Move.to(unit) / myTrayWidth - Move.from(unit) / myTrayWidth);
+				int cols = Math.abs(Move.to(unit) % myTrayWidth - Move.from(unit) % myTrayWidth);
+				if (rows + cols != 1) {
+					return false;
+				}
+				try {
+					initial.makeMove(unit);
+				} catch (IllegalArgumentException e) {
+					return false;
+				} catch (IllegalStateException e) {
+					return false;
+				}
+			}
+		}
+		return initial.equalsGoal();
+	}
+}
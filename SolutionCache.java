@@ -0,0 +1,233 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Remembers the puzzles solved so far, so that a puzzle that is a rotation or a
+ * reflection of one of them (dads+90, handout.config.1+270, ...) is answered by
+ * turning the stored moves instead of searching again.
+ *
+ * Each puzzle is filed under a canonical description: the tray's dimensions and
+ * the sorted blocks and goal blocks, in whichever of the eight rotations and
+ * reflections of the tray sorts first. A puzzle and all its images share that
+ * description. Solutions are stored as one-cell moves in the canonical frame,
+ * with the size of the moved block, which is all that is needed to turn them back
+ * into the frame of any puzzle with the same description. Puzzles without a
+ * solution are remembered too.
+ *
+ * A cache may also keep its puzzles in a SolutionStore on disk, which outlives the
+ * JVM and is shared with other processes.
+ *
+ * A cache may be shared by solves running on several threads.
+ */
+public class SolutionCache {
+
+	/**
+	 * Each solution: the number of one-cell moves, or -1 if there is no solution,
+	 * then {length, width, row, col, to row, to col} of every move.
+	 */
+	private final Map<String, int[]> solutions = new HashMap<String, int[]>();
+	private final SolutionStore store;
+
+	/**
+	 * Makes a cache that lasts as long as the JVM.
+	 */
+	public SolutionCache() {
+		this(null);
+	}
+
+	/**
+	 * Makes a cache backed by a store on disk.
+	 *
+	 * @param store	where to keep solutions, or null to keep them in memory only.
+	 */
+	public SolutionCache(SolutionStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Returns the solution of a puzzle if it, or a rotation or reflection of it,
+	 * was stored, or null.
+	 *
+	 * @param tray	the puzzle, in its initial configuration.
+	 * @throws IllegalStateException	if the store on disk cannot be read.
+	 */
+	public Solution lookup(Tray tray) {
+		int transform = canonical(tray);
+		int[] description = description(tray, transform);
+		String key = Arrays.toString(description);
+		int[] steps;
+		synchronized (this) {
+			steps = solutions.get(key);
+		}
+		if (steps == null && store != null) {
+			try {
+				steps = store.get(description);
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot use the solution store: " + e.getMessage(), e);
+			}
+			if (steps != null) {
+				synchronized (this) {
+					solutions.put(key, steps);
+				}
+			}
+		}
+		if (steps == null) {
+			return null;
+		}
+		int width = tray.getWidth();
+		if (steps[0] < 0) {
+			return new Solution(null, width);
+		}
+		Puzzle puzzle = tray.getPuzzle();
+		int[] dims = apply(transform, puzzle.getLength(), puzzle.getWidth(), new int[] {0, 0, 0, 0});
+		int back = inverse(transform);
+		long[] moves = new long[steps[0]];
+		for (int i = 0; i < moves.length; i++) {
+			int at = 1 + 6 * i;
+			int[] from = apply(back, dims[4], dims[5], new int[] {steps[at], steps[at + 1], steps[at + 2], steps[at + 3]});
+			int[] to = apply(back, dims[4], dims[5], new int[] {steps[at], steps[at + 1], steps[at + 4], steps[at + 5]});
+			moves[i] = Move.of(from[2] * width + from[3], to[2] * width + to[3]);
+		}
+		return new Solution(moves, width);
+	}
+
+	/**
+	 * Stores the solution of a puzzle.
+	 *
+	 * @param tray		the puzzle, in its initial configuration. It is not changed.
+	 * @param solution	the solution found for it, which may be unsolved.
+	 * @throws IllegalStateException	if the store on disk cannot be written.
+	 */
+	public void store(Tray tray, Solution solution) {
+		int transform = canonical(tray);
+		int[] steps = {-1};
+		if (solution.isSolved()) {
+			Puzzle puzzle = tray.getPuzzle();
+			Tray replay = new Tray(tray);
+			MoveList units = new MoveList();
+			for (long move : solution.getMoves()) {
+				Move.expand(move, tray.getWidth(), units);
+			}
+			steps = new int[1 + units.size() * 6];
+			steps[0] = units.size();
+			for (int i = 0; i < units.size(); i++) {
+				long unit = units.get(i);
+				int[] block = replay.blockAt(Move.from(unit));
+				int[] from = apply(transform, puzzle.getLength(), puzzle.getWidth(), block);
+				int[] to = apply(transform, puzzle.getLength(), puzzle.getWidth(), new int[] {block[0], block[1],
+						Move.to(unit) / tray.getWidth(), Move.to(unit) % tray.getWidth()});
+				System.arraycopy(from, 0, steps, 1 + 6 * i, 4);
+				steps[1 + 6 * i + 4] = to[2];
+				steps[1 + 6 * i + 5] = to[3];
+				replay.makeMove(unit);
+			}
+		}
+		int[] description = description(tray, transform);
+		synchronized (this) {
+			solutions.put(Arrays.toString(description), steps);
+		}
+		if (store != null) {
+			try {
+				store.put(description, steps);
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot use the solution store: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the transform (see apply) that gives the puzzle's canonical description.
+	 */
+	private static int canonical(Tray tray) {
+		int best = 0;
+		int[] bestDescription = null;
+		for (int t = 0; t < 8; t++) {
+			int[] description = description(tray, t);
+			if (bestDescription == null || compare(description, bestDescription) < 0) {
+				best = t;
+				bestDescription = description;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the dimensions, sorted blocks and sorted goal blocks of an image of
+	 * the puzzle, as one array.
+	 */
+	private static int[] description(Tray tray, int transform) {
+		Puzzle puzzle = tray.getPuzzle();
+		List<int[]> blocks = tray.getBlocks();
+		List<int[]> goal = puzzle.getGoal();
+		int[] dims = apply(transform, puzzle.getLength(), puzzle.getWidth(), new int[] {0, 0, 0, 0});
+		int[] description = new int[3 + 4 * (blocks.size() + goal.size())];
+		description[0] = dims[4];
+		description[1] = dims[5];
+		description[2] = blocks.size();
+		int i = 3;
+		for (List<int[]> part : Arrays.asList(blocks, goal)) {
+			long[] sorted = new long[part.size()];
+			for (int b = 0; b < sorted.length; b++) {
+				int[] image = apply(transform, puzzle.getLength(), puzzle.getWidth(), part.get(b));
+				sorted[b] = ((long) image[0] << 48) | ((long) image[1] << 32) | ((long) image[2] << 16) | image[3];
+			}
+			Arrays.sort(sorted);
+			for (long block : sorted) {
+				description[i++] = (int) (block >>> 48);
+				description[i++] = (int) (block >>> 32) & 0xFFFF;
+				description[i++] = (int) (block >>> 16) & 0xFFFF;
+				description[i++] = (int) block & 0xFFFF;
+			}
+		}
+		return description;
+	}
+
+	private static int compare(int[] a, int[] b) {
+		for (int i = 0; i < Math.min(a.length, b.length); i++) {
+			if (a[i] != b[i]) {
+				return a[i] < b[i] ? -1 : 1;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	/**
+	 * Returns {length, width, row, col, tray length, tray width} of a block in an
+	 * image of the tray. Transform t mirrors left to right if t >= 4 and then
+	 * turns the tray a quarter turn clockwise t % 4 times.
+	 *
+	 * @param t			the transform.
+	 * @param length	the tray's length.
+	 * @param width		the tray's width.
+	 * @param block		{length, width, row, col} of the block.
+	 */
+	private static int[] apply(int t, int length, int width, int[] block) {
+		int l = block[0];
+		int w = block[1];
+		int r = block[2];
+		int c = block[3];
+		if (t >= 4) {
+			c = width - w - c;
+		}
+		for (int k = 0; k < (t & 3); k++) {
+			int row = c;
+			c = length - r - l;
+			r = row;
+			int swap = l;
+			l = w;
+			w = swap;
+			swap = length;
+			length = width;
+			width = swap;
+		}
+		return new int[] {l, w, r, c, length, width};
+	}
+
+	/**
+	 * Returns the transform that undoes t: a reflection undoes itself, and k
+	 * quarter turns are undone by 4 - k more.
+	 */
+	private static int inverse(int t) {
+		return t >= 4 ? t : (4 - t) & 3;
+	}
+}
@@ -0,0 +1,298 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * A log on disk of the puzzles SolutionCache has seen, shared by every process that
+ * uses the same directory. Each puzzle is a record holding its canonical
+ * description and the cache's encoding of its solution, found by a 64-bit
+ * fingerprint of the description. Records are only ever appended; a lookup that
+ * hits appends a short touch record, so the order of a puzzle's last record in the
+ * log is the order it was last used in.
+ *
+ * Every process keeps an index from fingerprint to record in memory, and brings it
+ * up to date by reading (through a memory map) whatever other processes appended
+ * since it last looked. All reads and writes happen under an exclusive lock on a
+ * separate lock file. When the log grows past its limit, the puzzles used most
+ * recently are copied, oldest first, into a new log of at most half the limit,
+ * which replaces the old one; the log's header then carries a new generation, and
+ * other processes rebuild their index when they see it. A record cut short by a
+ * process that died while appending is dropped by the next writer.
+ *
+ * Use open, so that a process has one store per directory.
+ */
+public class SolutionStore {
+
+	/**The default size, in bytes, the log is compacted at.**/
+	public static final long DEFAULT_LIMIT = 64L << 20;
+
+	private static final long MAGIC = 0x534F4C5554494F4EL;
+	private static final int HEADER = 16;
+	/**kind, description length, value length, fingerprint**/
+	private static final int RECORD_HEADER = 20;
+	private static final int ENTRY = 1;
+	private static final int TOUCH = 2;
+	private static final Map<File, SolutionStore> stores = new HashMap<File, SolutionStore>();
+
+	private final File log;
+	private final File lock;
+	private final long limit;
+	private final Random random = new Random();
+
+	/**The generation of the log the index was read from, and how far it was read**/
+	private long generation;
+	private long end;
+	/**Offset of the latest entry of each fingerprint**/
+	private final Map<Long, Long> entries = new HashMap<Long, Long>();
+	/**Offset of the last record (entry or touch) of each fingerprint**/
+	private final Map<Long, Long> lastUse = new HashMap<Long, Long>();
+
+	private SolutionStore(File dir, long limit) {
+		log = new File(dir, "solutions.log");
+		lock = new File(dir, "solutions.lock");
+		this.limit = limit;
+	}
+
+	/**
+	 * Returns the store kept in a directory, creating the directory if needed.
+	 * Stores already open are shared.
+	 *
+	 * @param dir	the directory.
+	 * @param limit	the size in bytes past which the log is compacted.
+	 * @throws IOException	if the directory cannot be created.
+	 */
+	public static SolutionStore open(File dir, long limit) throws IOException {
+		dir = dir.getAbsoluteFile();
+		synchronized (stores) {
+			SolutionStore store = stores.get(dir);
+			if (store == null) {
+				if (!dir.isDirectory() && !dir.mkdirs()) {
+					throw new IOException("Cannot create " + dir);
+				}
+				store = new SolutionStore(dir, limit);
+				stores.put(dir, store);
+			}
+			return store;
+		}
+	}
+
+	/**
+	 * Returns the value stored for a description, or null if there is none.
+	 *
+	 * @param description	the puzzle's canonical description.
+	 * @throws IOException	if the log cannot be read or written.
+	 */
+	public synchronized int[] get(int[] description) throws IOException {
+		long fingerprint = fingerprint(description);
+		FileChannel locked = lock();
+		try {
+			RandomAccessFile file = new RandomAccessFile(log, "rw");
+			try {
+				catchUp(file);
+				Long offset = entries.get(fingerprint);
+				if (offset == null) {
+					return null;
+				}
+				int[][] record = readEntry(file.getChannel(), offset);
+				if (!Arrays.equals(record[0], description)) {
+					return null;
+				}
+				append(file, TOUCH, fingerprint, new int[0], new int[0]);
+				return record[1];
+			} finally {
+				file.close();
+			}
+		} finally {
+			locked.close();
+		}
+	}
+
+	/**
+	 * Appends a value for a description, replacing any stored before, and compacts
+	 * the log if it has grown past the limit.
+	 *
+	 * @param description	the puzzle's canonical description.
+	 * @param value			what to store for it.
+	 * @throws IOException	if the log cannot be read or written.
+	 */
+	public synchronized void put(int[] description, int[] value) throws IOException {
+		FileChannel locked = lock();
+		try {
+			RandomAccessFile file = new RandomAccessFile(log, "rw");
+			try {
+				catchUp(file);
+				append(file, ENTRY, fingerprint(description), description, value);
+				if (end > limit) {
+					compact(file);
+				}
+			} finally {
+				file.close();
+			}
+		} finally {
+			locked.close();
+		}
+	}
+
+	/**
+	 * Returns the channel of the lock file, holding an exclusive lock that closing
+	 * the channel releases.
+	 */
+	private FileChannel lock() throws IOException {
+		FileChannel channel = new RandomAccessFile(lock, "rw").getChannel();
+		try {
+			channel.lock();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return channel;
+	}
+
+	/**
+	 * Brings the index up to date with the log, starting a new log if there is
+	 * none, and leaves end just after the last whole record.
+	 */
+	private void catchUp(RandomAccessFile file) throws IOException {
+		if (file.length() < HEADER) {
+			file.setLength(0);
+			writeHeader(file, random.nextLong());
+		}
+		file.seek(0);
+		if (file.readLong() != MAGIC) {
+			throw new IOException(log + " is not a solution log; delete it to start a new one.");
+		}
+		long current = file.readLong();
+		long length = file.length();
+		if (current != generation || length < end || end == 0) {
+			generation = current;
+			end = HEADER;
+			entries.clear();
+			lastUse.clear();
+		}
+		if (length == end) {
+			return;
+		}
+		MappedByteBuffer map = file.getChannel().map(FileChannel.MapMode.READ_ONLY, end, length - end);
+		while (map.remaining() >= RECORD_HEADER) {
+			int start = map.position();
+			int kind = map.getInt();
+			int descriptionLength = map.getInt();
+			int valueLength = map.getInt();
+			long fingerprint = map.getLong();
+			if ((kind != ENTRY && kind != TOUCH) || descriptionLength < 0 || valueLength < 0
+					|| map.remaining() < 4L * (descriptionLength + valueLength)) {
+				map.position(start);
+				break;
+			}
+			map.position(map.position() + 4 * (descriptionLength + valueLength));
+			if (kind == ENTRY) {
+				entries.put(fingerprint, end + start);
+			}
+			if (entries.containsKey(fingerprint)) {
+				lastUse.put(fingerprint, end + start);
+			}
+		}
+		end += map.position();
+	}
+
+	/**
+	 * Returns {description, value} of the entry at an offset.
+	 */
+	private static int[][] readEntry(FileChannel channel, long offset) throws IOException {
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, offset, RECORD_HEADER);
+		header.getInt();
+		int[][] record = new int[][] {new int[header.getInt()], new int[header.getInt()]};
+		IntBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, offset + RECORD_HEADER,
+				4L * (record[0].length + record[1].length)).asIntBuffer();
+		body.get(record[0]);
+		body.get(record[1]);
+		return record;
+	}
+
+	/**
+	 * Writes a record at end, over anything left there by a writer that died, and
+	 * indexes it.
+	 */
+	private void append(RandomAccessFile file, int kind, long fingerprint, int[] description, int[] value)
+			throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + 4 * (description.length + value.length));
+		record.putInt(kind).putInt(description.length).putInt(value.length).putLong(fingerprint);
+		record.asIntBuffer().put(description).put(value);
+		record.rewind();
+		file.setLength(end);
+		FileChannel channel = file.getChannel();
+		channel.position(end);
+		while (record.hasRemaining()) {
+			channel.write(record);
+		}
+		if (kind == ENTRY) {
+			entries.put(fingerprint, end);
+		}
+		lastUse.put(fingerprint, end);
+		end = channel.position();
+	}
+
+	/**
+	 * Replaces the log with one holding the most recently used entries, up to half
+	 * the limit, and reads the new log's index.
+	 */
+	private void compact(RandomAccessFile file) throws IOException {
+		List<Long> recent = new ArrayList<Long>(lastUse.keySet());
+		Collections.sort(recent, new Comparator<Long>() {
+			public int compare(Long a, Long b) {
+				return lastUse.get(b).compareTo(lastUse.get(a));
+			}
+		});
+		List<int[][]> kept = new ArrayList<int[][]>();
+		long size = HEADER;
+		for (long fingerprint : recent) {
+			int[][] record = readEntry(file.getChannel(), entries.get(fingerprint));
+			size += RECORD_HEADER + 4 * (record[0].length + record[1].length);
+			if (size > limit / 2) {
+				break;
+			}
+			kept.add(record);
+		}
+		File temp = File.createTempFile("solutions", ".tmp", log.getParentFile());
+		RandomAccessFile out = new RandomAccessFile(temp, "rw");
+		try {
+			writeHeader(out, random.nextLong());
+			entries.clear();
+			lastUse.clear();
+			end = HEADER;
+			for (int i = kept.size() - 1; i >= 0; i--) {
+				append(out, ENTRY, fingerprint(kept.get(i)[0]), kept.get(i)[0], kept.get(i)[1]);
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(log)) {
+			log.delete();
+			if (!temp.renameTo(log)) {
+				temp.delete();
+				throw new IOException("Cannot replace " + log);
+			}
+		}
+		// the next catchUp sees the new generation and reads the new log
+		end = 0;
+	}
+
+	private static void writeHeader(RandomAccessFile file, long generation) throws IOException {
+		file.seek(0);
+		file.writeLong(MAGIC);
+		file.writeLong(generation);
+	}
+
+	/**
+	 * Returns a 64-bit hash of a description.
+	 */
+	public static long fingerprint(int[] description) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (int value : description) {
+			h = (h ^ value) * 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+		return h;
+	}
+}
@@ -0,0 +1,171 @@
+import java.io.*;
+
+/**
+ * Writes the one-cell moves of a solution to a stream as they are given, through
+ * a buffer of its own, so a solution of any length costs a write per buffer full
+ * and one flush rather than a call (and, on the console, a flush) per move. Moves
+ * are taken one at a time, so a caller can stream a path as it walks it without
+ * collecting it first.
+ *
+ * There are two formats:
+ *
+ * 		TEXT	"row col row col" per line, what the Checker expects.
+ * 		BINARY	the int MAGIC and the tray's width, then one int per move,
+ * 				from << 2 | direction, where from is the cell the block's
+ * 				corner leaves (row * width + col) and direction is UP, DOWN,
+ * 				LEFT or RIGHT. Ints are big-endian, as DataInputStream reads
+ * 				them, and the moves run to the end of the stream.
+ */
+public class SolutionWriter implements Closeable, Flushable {
+
+	public static final int TEXT = 0;
+	public static final int BINARY = 1;
+
+	/**"SBM1", the first int of the binary format**/
+	public static final int MAGIC = 0x53424D31;
+
+	/**Directions of the binary format**/
+	public static final int UP = 0;
+	public static final int DOWN = 1;
+	public static final int LEFT = 2;
+	public static final int RIGHT = 3;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final OutputStream out;
+	private final int trayWidth;
+	private final int format;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final MoveList units = new MoveList();
+	private int count = 0;
+	private long steps = 0;
+
+	/**
+	 * @param out		where to write; it is only flushed or closed when this is.
+	 * @param trayWidth	the number of columns in the tray, to decode the moves.
+	 * @param format	TEXT or BINARY.
+	 */
+	public SolutionWriter(OutputStream out, int trayWidth, int format) throws IOException {
+		if (format != TEXT && format != BINARY) {
+			throw new IllegalArgumentException("No such solution format: " + format);
+		}
+		this.out = out;
+		this.trayWidth = trayWidth;
+		this.format = format;
+		if (format == BINARY) {
+			writeInt(MAGIC);
+			writeInt(trayWidth);
+		}
+	}
+
+	/**
+	 * Writes the one-cell moves a move is made of.
+	 *
+	 * @param move	the move (see Move).
+	 */
+	public void write(long move) throws IOException {
+		units.clear();
+		Move.expand(move, trayWidth, units);
+		for (int i = 0; i < units.size(); i++) {
+			writeUnit(units.get(i));
+		}
+	}
+
+	/**
+	 * Writes the one-cell moves of each move in turn.
+	 *
+	 * @param moves	the moves, in order.
+	 */
+	public void write(long[] moves) throws IOException {
+		for (long move : moves) {
+			write(move);
+		}
+	}
+
+	/**
+	 * Returns the number of one-cell moves written so far.
+	 */
+	public long getStepCount() {
+		return steps;
+	}
+
+	/**
+	 * Writes out what is buffered and flushes the stream.
+	 */
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+
+	/**
+	 * Writes out what is buffered and closes the stream.
+	 */
+	public void close() throws IOException {
+		drain();
+		out.close();
+	}
+
+	private void writeUnit(long unit) throws IOException {
+		int from = Move.from(unit);
+		int to = Move.to(unit);
+		steps++;
+		if (format == BINARY) {
+			int direction;
+			if (to == from - trayWidth) {
+				direction = UP;
+			} else if (to == from + trayWidth) {
+				direction = DOWN;
+			} else if (to == from - 1) {
+				direction = LEFT;
+			} else {
+				direction = RIGHT;
+			}
+			writeInt(from << 2 | direction);
+			return;
+		}
+		// four numbers of at most ten digits, three spaces and a newline
+		if (count > buffer.length - 44) {
+			drain();
+		}
+		writeNumber(from / trayWidth);
+		buffer[count++] = ' ';
+		writeNumber(from % trayWidth);
+		buffer[count++] = ' ';
+		writeNumber(to / trayWidth);
+		buffer[count++] = ' ';
+		writeNumber(to % trayWidth);
+		buffer[count++] = '\n';
+	}
+
+	/**
+	 * Adds the decimal digits of a number that is not negative to the buffer.
+	 */
+	private void writeNumber(int value) {
+		int end = count;
+		for (int rest = value; rest >= 10; rest /= 10) {
+			end++;
+		}
+		count = end + 1;
+		do {
+			buffer[end--] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+	}
+
+	private void writeInt(int value) throws IOException {
+		if (count > buffer.length - 4) {
+			drain();
+		}
+		buffer[count++] = (byte) (value >>> 24);
+		buffer[count++] = (byte) (value >>> 16);
+		buffer[count++] = (byte) (value >>> 8);
+		buffer[count++] = (byte) value;
+	}
+
+	private void drain() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
@@ -1,23 +1,31 @@
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 
 public class Solver {
 	
-	private PriorityQueue<Tray> fringe;
+	private SearchStrategy strategy;
+	private SolverOptions options;
+	private boolean solved;
 	
-	//constructs a new solver object. 
+	//constructs a new solver object with the default options. 
 	public Solver (String initialConfig, String finalConfig) {
+		this(initialConfig, finalConfig, new SolverOptions());
+	}
+	
+	//constructs a new solver object and prints the solution. 
+	public Solver (String initialConfig, String finalConfig, SolverOptions options) {
 		long initTime = System.nanoTime();
-		Tray initialTray = new Tray(initialConfig);
-		Tray finalTray = new Tray(initialConfig, finalConfig);
-		fringe = new PriorityQueue<Tray>();
+		this.options = options;
+		Tray initialTray = new Tray(initialConfig, finalConfig, options);
+		strategy = options.getStrategy();
 		try {
-			printPath(initialTray, finalTray);
+			solved = printPath(initialTray);
 		} finally {
 			long endTime = System.nanoTime();
 			long totalTime = endTime - initTime;
 			//{Start Debugging!}
-			if (Debug.solverTime == Debug.doDebug) {
+			if (options.getDebug().solverTime == Debug.doDebug) {
 				long runTime = totalTime / 1000000;
 				System.out.println("{Debugging} run time is " + runTime + "ms");
                 //{End Debugging...}
@@ -26,68 +34,226 @@ public class Solver {
 	}
 	
 	/**
-	 * Prints a list of paths the trays undergone to the goal.
+	 * Solves one puzzle without printing anything. Solves share no state but the
+	 * options' SolutionCache, so this may be called from several threads at once.
 	 * 
-	 * @param initial	The initial tray configuration.
-	 * @param goal		The desired goal configuration.
+	 * @param initialConfig	The initial configuration file.
+	 * @param finalConfig	The goal file.
+	 * @param options		The search options.
+	 * @return				The solution, which is unsolved if the goal cannot be reached.
+	 */
+	public static Solution solve (String initialConfig, String finalConfig, SolverOptions options) {
+		Tray initial = new Tray(initialConfig, finalConfig, options);
+		return solve(initial, options.getStrategy(), options);
+	}
+	
+	/**
+	 * Returns whether the puzzle this Solver was made for was solved; if not,
+	 * nothing was printed.
+	 */
+	public boolean isSolved() {
+		return solved;
+	}
+	
+	/**
+	 * Answers a puzzle that Feasibility shows has no solution or whose initial
+	 * configuration already meets the goal without searching, then from the
+	 * options' SolutionCache if it is there. Otherwise it plays the moves that are
+	 * forced (see followForcedMoves), searches from where they end unless they
+	 * reach the goal, and adds the solution to the cache.
+	 * 
+	 * @param initial	The initial tray configuration, used as the search's working board.
+	 * @param strategy	The search to run on a miss.
+	 * @param options	The search options.
+	 * @return			The solution, which is unsolved if the goal cannot be reached.
 	 */
-	public void printPath (Tray initial, Tray goal) {
-		ArrayList<Tray> path = path (initial, goal);
-		for (Tray correctMove: path) {
-			System.out.println(correctMove.getStep());
+	private static Solution solve (Tray initial, SearchStrategy strategy, SolverOptions options) {
+		String reason = Feasibility.check(initial);
+		if (reason != null) {
+			return Solution.unsolvable(reason, initial.getWidth());
+		}
+		if (initial.equalsGoal()) {
+			return new Solution(new long[0], initial.getWidth(), 1);
+		}
+		SolutionCache cache = options.getSolutionCache();
+		Tray start = null;
+		if (cache != null) {
+			Solution cached = cache.lookup(initial);
+			if (cached != null) {
+				return cached;
+			}
+			start = new Tray(initial);
+		}
+		MoveList forced = new MoveList();
+		Solution solution;
+		if (!followForcedMoves(initial, forced)) {
+			solution = new Solution(null, initial.getWidth(), forced.size() + 1);
+		} else if (initial.equalsGoal()) {
+			solution = new Solution(forced.toArray(), initial.getWidth(), forced.size() + 1);
+		} else {
+			SearchStats stats = initial.getPuzzle().getStats();
+			stats.start(strategy, options.getStatsInterval(), System.err);
+			long[] moves;
+			try {
+				moves = strategy.search(initial);
+			} finally {
+				stats.stop();
+			}
+			if (moves != null && forced.size() > 0) {
+				long[] all = new long[forced.size() + moves.length];
+				System.arraycopy(forced.toArray(), 0, all, 0, forced.size());
+				System.arraycopy(moves, 0, all, forced.size(), moves.length);
+				moves = all;
+			}
+			solution = new Solution(moves, initial.getWidth(), forced.size() + strategy.getExplored());
+		}
+		if (cache != null) {
+			cache.store(start, solution);
 		}
-        return;
+		return solution;
 	}
 	
 	/**
-	 * Returns an ArrayList containing all the tray configurations included in the path.
+	 * Plays the moves of a tray that has only one, and then as long as there is
+	 * only one move that does not undo the last, stopping at the goal. Every line of
+	 * play from the initial configuration starts with these moves, so a search from
+	 * where they end finds solutions as short as one from the start would.
 	 * 
-	 * @param initial	The initial tray configuration.
-	 * @param goal		The desired goal configuration.
-	 * @return			The ArrayList of tray configurations.
+	 * @param tray		The tray, in its initial configuration; it is left where the
+	 * 					forced moves end.
+	 * @param forced	The list to add the moves played to.
+	 * @return			false if the forced moves end where the only move undoes the
+	 * 					last: then they are every configuration there is, and none
+	 * 					meets the goal.
 	 */
-	public ArrayList<Tray> path (Tray initial, Tray goal) {
-		Tray newTray = null;
-		ArrayList<Tray> result = new ArrayList<Tray> ( );
-		fringe.add(initial);
-		while (!fringe.isEmpty()) {
-			newTray = (Tray) fringe.poll();
-			if (newTray.equalsGoal(goal)) {
-				//{Start Debugging!}
-				if (Debug.ShowMoveNumber == Debug.doDebug) {
-					int totalMoveNumber = newTray.showNumberOfMoves();
-					System.out.println("{Debugging} The total moves are " + totalMoveNumber);
-				}
-	                //{End Debugging...}
-				break;
-			} else {
-				for (Tray nextTray : newTray.getMoves()) {
-					    fringe.add(nextTray);
+	private static boolean followForcedMoves (Tray tray, MoveList forced) {
+		MoveList moves = new MoveList();
+		tray.getMoves(moves);
+		if (moves.size() != 1) {
+			return true;
+		}
+		long last = moves.get(0);
+		while (true) {
+			tray.makeMove(last);
+			forced.add(last);
+			if (tray.equalsGoal()) {
+				return true;
+			}
+			tray.getMoves(moves);
+			long next = 0;
+			int count = 0;
+			for (int i = 0; i < moves.size(); i++) {
+				long move = moves.get(i);
+				if (Move.from(move) != Move.to(last) || Move.to(move) != Move.from(last)) {
+					next = move;
+					count++;
 				}
 			}
+			if (count == 0) {
+				return false;
+			}
+			if (count > 1) {
+				return true;
+			}
+			last = next;
 		}
-		if (newTray.equalsGoal(goal)) {
-		    while (newTray.getParent() != null) {
-			    result.add(newTray);
-			    newTray = newTray.getParent();
-		    }
-		    Collections.reverse(result);
-		    return result;
-		} else {
-			System.exit(1);
+	}
+	
+	/**
+	 * Solves many puzzles at once on a pool of threads in this JVM.
+	 * 
+	 * @param puzzles	{initial configuration file, goal file} of every puzzle.
+	 * @param options	The search options, used by every solve.
+	 * @param threads	The number of puzzles to work on at the same time.
+	 * @return			The solutions, in the same order as the puzzles.
+	 * @throws IllegalArgumentException	if the options checkpoint searches.
+	 * @throws ExecutionException	if a solve throws; the cause is the exception it threw.
+	 * @throws InterruptedException	if interrupted while waiting.
+	 */
+	public static List<Solution> solveAll (List<String[]> puzzles, final SolverOptions options, int threads)
+			throws InterruptedException, ExecutionException {
+		options.checkConcurrent("solveAll");
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Solution>> futures = new ArrayList<Future<Solution>>();
+			for (final String[] puzzle : puzzles) {
+				futures.add(pool.submit(new Callable<Solution>() {
+					public Solution call() {
+						return solve(puzzle[0], puzzle[1], options);
+					}
+				}));
+			}
+			List<Solution> result = new ArrayList<Solution>();
+			for (Future<Solution> future : futures) {
+				result.add(future.get());
+			}
+			return result;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Prints the list of moves that take the initial tray to the goal.
+	 * 
+	 * The moves are written in the options' output format, buffered and flushed once.
+	 * 
+	 * @param initial	The initial tray configuration.
+	 * @return			false if there is no solution, in which case nothing is printed.
+	 */
+	public boolean printPath (Tray initial) {
+		long[] path = path (initial);
+		if (path == null) {
+			return false;
+		}
+		try {
+			new Solution(path, initial.getWidth()).write(System.out, options.getOutputFormat());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+        return true;
+	}
+	
+	/**
+	 * Returns the moves that take the initial tray configuration to the goal, in order.
+	 * The tray is used as the search's working board and is left in an unspecified
+	 * configuration.
+	 * 
+	 * @param initial	The initial tray configuration.
+	 * @return			The moves along the path, or null if there is no solution.
+	 */
+	public long[] path (Tray initial) {
+		Solution solution = solve(initial, strategy, options);
+		long[] result = solution.getMoves();
+		if (result == null) {
+			//{Start Debugging!}
+			if (options.getDebug().ShowMoveNumber == Debug.doDebug) {
+				System.out.println("{Debugging} No solution: " + solution.getReason());
+			}
+			//{End Debugging...}
 			return null;
 		}
+		//{Start Debugging!}
+		if (options.getDebug().ShowMoveNumber == Debug.doDebug) {
+			int totalMoveNumber = result.length;
+			System.out.println("{Debugging} The total moves are " + totalMoveNumber);
+		}
+		//{End Debugging...}
+		return result;
 	}
+	
 	/**
-     * Design for three argument input.
+     * Design for input with a debugging argument.
      * Call solver method and Show debug information.
      * 
      * @param DebugInfo     Debugging argument
+     * @param options		The search options.
 	 * @param initial		The initial tray configuration.
 	 * @param goal			The desired goal configuration.
+	 * @return				The Solver that ran.
      */
 	
-	private static void DebuggingSolver(String DebugInfo, String initialConfig, String finalConfig){
+	private static Solver DebuggingSolver(String DebugInfo, SolverOptions options, String initialConfig, String finalConfig){
 		if (DebugInfo.equals("options") || DebugInfo.equals("")) {
 			System.out.println("{{{Debug Menu}}}");
 			System.out.println("Instruction: Please put your multiple debuging arguments together after '-o'");
@@ -100,39 +266,91 @@ public class Solver {
 			for (int i = 0; i < DebugInfo.length(); i++) {
 				String current = DebugInfo.substring(i, i+1);
 				if (current.equals("T")) {
-					Debug.solverTime = Debug.doDebug;
+					options.getDebug().solverTime = Debug.doDebug;
 				} else if (current.equals("M")){
-					Debug.printMoves = Debug.doDebug;
+					options.getDebug().printMoves = Debug.doDebug;
 				} else if (current.equals("N")){
-					Debug.ShowMoveNumber = Debug.doDebug;
+					options.getDebug().ShowMoveNumber = Debug.doDebug;
 				} else {
 					System.out.println("No such debug option.");
 				}
 			}
 		}
-		Solver stepToGoal = new Solver(initialConfig, finalConfig);
+		return new Solver(initialConfig, finalConfig, options);
 	}
 	
 	//static void main method.
-	public static void main(String[] args) throws FileNotFoundException {
-		//with two arguments
-		if (args.length == 2) {
-		    String initialConfig = args[0];
-		    String finalConfig = args[1];
-            Solver stepToGoal = new Solver(initialConfig, finalConfig);     
-        //with three arguments
-		} else if (args.length == 3 && args[0].substring(0, 2).equals("-o")) {
-			String debugSpec = args[0].substring(2);
-		    String initialConfig = args[1];
-		    String finalConfig = args[2];
-		    DebuggingSolver(debugSpec, initialConfig, finalConfig); 
-		} else if (args.length == 3 && args[0].substring(0, 2).equals("-O")) {
-			String debugSpec = args[0].substring(2);
-		    String initialConfig = args[1];
-		    String finalConfig = args[2];
-		    DebuggingSolver(debugSpec, initialConfig, finalConfig); 
-		} else {
+	public static void main(String[] args) throws IOException {
+		//options first: '-o' debugging flags, '-b'/'-d' batch modes and search options
+		SolverOptions options = new SolverOptions();
+		String debugSpec = null;
+		boolean batch = false;
+		int port = -1;
+		int first = 0;
+		while (first < args.length && args[first].startsWith("-") && !args[first].equals("-")) {
+			if (args[first].startsWith("-o") || args[first].startsWith("-O")) {
+				debugSpec = args[first].substring(2);
+			} else if (args[first].equals("-b")) {
+				batch = true;
+			} else if (args[first].startsWith("-d")) {
+				try {
+					port = Integer.parseInt(args[first].substring(2));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Bad port: " + args[first]);
+				}
+			} else {
+				options.parse(args[first]);
+			}
+			first++;
+		}
+		//'-b manifest' solves a whole suite, '-' reading it from the standard input
+		if (batch) {
+			if (args.length - first != 1) {
+				throw new IllegalArgumentException("Invalid input arguments");
+			}
+			BufferedReader manifest;
+			File dir = null;
+			if (args[first].equals("-")) {
+				manifest = new BufferedReader(new InputStreamReader(System.in));
+			} else {
+				manifest = new BufferedReader(new FileReader(args[first]));
+				dir = new File(args[first]).getAbsoluteFile().getParentFile();
+			}
+			boolean passed;
+			try {
+				passed = new BatchSolver(options).run(manifest, dir, System.out);
+			} finally {
+				manifest.close();
+			}
+			System.exit(passed ? 0 : 1);
+		}
+		//'-d<port>' answers puzzles sent to a local port
+		if (port >= 0) {
+			if (args.length != first) {
+				throw new IllegalArgumentException("Invalid input arguments");
+			}
+			new BatchSolver(options).serve(port);
+			return;
+		}
+		//then the two configuration files
+		if (args.length - first != 2) {
 			throw new IllegalArgumentException("Invalid input arguments");
 		}
+		String initialConfig = args[first];
+		String finalConfig = args[first + 1];
+		try {
+			Solver stepToGoal;
+			if (debugSpec == null) {
+	            stepToGoal = new Solver(initialConfig, finalConfig, options);
+			} else {
+			    stepToGoal = DebuggingSolver(debugSpec, options, initialConfig, finalConfig); 
+			}
+			if (!stepToGoal.isSolved()) {
+				System.exit(1);
+			}
+		} catch (TrayFormatException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
 	}
 }
@@ -0,0 +1,376 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Times the hot paths of the solver and a few whole solves, and writes the results
+ * as JSON so that runs from different versions can be compared by a script.
+ *
+ * Each benchmark runs warm-up iterations, which are thrown away, and then measured
+ * iterations. An iteration repeats the benchmark's operation until a set time has
+ * passed and records the average time per operation. Every result an operation
+ * returns is folded into a sink that is printed at the end, so the JIT cannot drop
+ * the work as unused.
+ *
+ * The micro-benchmarks are:
+ *
+ * 		parse		Tray(big.tray.4, many.blocks.100.goal)
+ * 		getMoves	Tray.getMoves on a mid-game configuration of century+180
+ * 		move		makeMove and undoMove of one of its moves
+ * 		score		makeMove, setScore and undoMove, with the heuristic kept up to date
+ * 		equalsGoal	Tray.equalsGoal
+ * 		visitedAdd	VisitedSet.add of configurations from a random walk, about
+ * 					half of them already in the set
+ *
+ * and solve.* solves one puzzle from easy, medium and hard1 with the default
+ * options, parsing included. File names are relative to the current directory,
+ * which should be the top of the source tree; benchmarks whose files are missing
+ * are skipped.
+ *
+ * The JSON is an array with one object per benchmark:
+ *
+ * 		{"benchmark": "move", "unit": "ns/op", "score": 41.7, "error": 1.2,
+ * 		 "min": 40.1, "max": 44.0, "operations": 123456789, "iterations": [...]}
+ *
+ * where score is the mean of the measured iterations and error is half the width
+ * of a 99.9% confidence interval for it.
+ */
+public class SolverBenchmark {
+
+	private static final String[][] SOLVES = {
+		{"solve.easy", "easy/big.search.1", "easy/big.search.1.goal"},
+		{"solve.medium", "medium/c15", "medium/15.23-27.30.41.goal"},
+		{"solve.medium.handout", "medium/handout.config.1+90", "medium/handout.goal+90"},
+		{"solve.hard", "hard1/century+180", "hard1/century+180.goal"},
+	};
+
+	private final int warmups;
+	private final int iterations;
+	private final long iterationTime;
+	private long sink = 0;
+
+	/**
+	 * One operation to time, with whatever it needs set up beforehand.
+	 */
+	private abstract static class Benchmark {
+		final String name;
+		final String[] files;
+
+		Benchmark(String name, String... files) {
+			this.name = name;
+			this.files = files;
+		}
+
+		/**
+		 * Prepares the operation; not timed.
+		 */
+		void setUp() {
+		}
+
+		/**
+		 * Runs the operation once.
+		 *
+		 * @return	something computed by the operation, for the sink.
+		 */
+		abstract long run();
+	}
+
+	/**
+	 * @param warmups		the number of iterations to run and throw away.
+	 * @param iterations	the number of iterations to measure.
+	 * @param iterationTime	the least time each iteration runs for, in milliseconds.
+	 */
+	public SolverBenchmark(int warmups, int iterations, long iterationTime) {
+		if (warmups < 0 || iterations < 1 || iterationTime < 1) {
+			throw new IllegalArgumentException("Need at least one measured iteration of at least 1ms.");
+		}
+		this.warmups = warmups;
+		this.iterations = iterations;
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * Runs every benchmark whose name starts with one of the prefixes, or every
+	 * benchmark if there are none, printing progress to err.
+	 *
+	 * @param prefixes	the benchmarks to run.
+	 * @param err		where to print progress and a summary.
+	 * @return			the results, as a JSON array.
+	 */
+	public String run(List<String> prefixes, PrintStream err) {
+		StringBuilder json = new StringBuilder("[");
+		for (Benchmark benchmark : benchmarks()) {
+			if (!selected(benchmark.name, prefixes)) {
+				continue;
+			}
+			boolean missing = false;
+			for (String file : benchmark.files) {
+				missing |= !new File(file).isFile();
+			}
+			if (missing) {
+				err.println(benchmark.name + ": skipped, missing " + Arrays.toString(benchmark.files));
+				continue;
+			}
+			benchmark.setUp();
+			for (int i = 0; i < warmups; i++) {
+				iteration(benchmark);
+			}
+			double[] results = new double[iterations];
+			long operations = 0;
+			for (int i = 0; i < iterations; i++) {
+				long[] counted = iteration(benchmark);
+				results[i] = (double) counted[1] / counted[0];
+				operations += counted[0];
+			}
+			boolean slow = mean(results) >= 1e6;
+			double scale = slow ? 1e6 : 1;
+			String unit = slow ? "ms/op" : "ns/op";
+			for (int i = 0; i < results.length; i++) {
+				results[i] /= scale;
+			}
+			double mean = mean(results);
+			double error = error(results);
+			double min = results[0];
+			double max = results[0];
+			for (double result : results) {
+				min = Math.min(min, result);
+				max = Math.max(max, result);
+			}
+			err.println(String.format("%-22s %12.3f +- %.3f %s", benchmark.name, mean, error, unit));
+			if (json.length() > 1) {
+				json.append(",");
+			}
+			json.append("\n  {\"benchmark\": \"").append(benchmark.name).append("\", \"unit\": \"").append(unit)
+					.append("\", \"score\": ").append(number(mean)).append(", \"error\": ").append(number(error))
+					.append(", \"min\": ").append(number(min)).append(", \"max\": ").append(number(max))
+					.append(", \"operations\": ").append(operations).append(", \"iterations\": [");
+			for (int i = 0; i < results.length; i++) {
+				json.append(i == 0 ? "" : ", ").append(number(results[i]));
+			}
+			json.append("]}");
+		}
+		json.append("\n]\n");
+		err.println("(sink " + sink + ")");
+		return json.toString();
+	}
+
+	/**
+	 * Runs one iteration of a benchmark.
+	 *
+	 * @return	{operations run, nanoseconds taken}.
+	 */
+	private long[] iteration(Benchmark benchmark) {
+		long limit = iterationTime * 1000000;
+		long operations = 0;
+		long batch = 1;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			for (long i = 0; i < batch; i++) {
+				sink += benchmark.run();
+			}
+			operations += batch;
+			elapsed = System.nanoTime() - start;
+			if (batch < 1 << 20 && elapsed < limit / 16) {
+				batch *= 2;
+			}
+		} while (elapsed < limit);
+		return new long[] {operations, elapsed};
+	}
+
+	private List<Benchmark> benchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new Benchmark("parse", "big.tray.4", "many.blocks.100.goal") {
+			long run() {
+				return new Tray(files[0], files[1]).hash();
+			}
+		});
+		benchmarks.add(new TrayBenchmark("getMoves") {
+			long run() {
+				tray.getMoves(moves);
+				return moves.size();
+			}
+		});
+		benchmarks.add(new TrayBenchmark("move") {
+			long run() {
+				long move = moves.get(next++ % moves.size());
+				tray.makeMove(move);
+				long hash = tray.hash();
+				tray.undoMove(move);
+				return hash;
+			}
+		});
+		benchmarks.add(new TrayBenchmark("score") {
+			void setUp() {
+				super.setUp();
+				tray.setScore();
+			}
+
+			long run() {
+				long move = moves.get(next++ % moves.size());
+				tray.makeMove(move);
+				int score = tray.setScore();
+				tray.undoMove(move);
+				return score;
+			}
+		});
+		benchmarks.add(new TrayBenchmark("equalsGoal") {
+			long run() {
+				return tray.equalsGoal() ? 1 : 0;
+			}
+		});
+		benchmarks.add(new TrayBenchmark("visitedAdd") {
+			private static final int KEYS = 1 << 16;
+			private long[][] keys;
+			private long[] hashes;
+			private VisitedSet visited;
+
+			void setUp() {
+				super.setUp();
+				keys = new long[KEYS][];
+				hashes = new long[KEYS];
+				Random random = new Random(1);
+				for (int i = 0; i < KEYS; i++) {
+					tray.getMoves(moves);
+					tray.makeMove(moves.get(random.nextInt(moves.size())));
+					keys[i] = new long[tray.keyLength()];
+					tray.encode(keys[i]);
+					hashes[i] = tray.hash();
+				}
+			}
+
+			long run() {
+				if (next % KEYS == 0) {
+					visited = new VisitedSet(keys[0].length);
+				}
+				int i = next++ % KEYS;
+				return visited.add(keys[i], hashes[i]);
+			}
+		});
+		for (final String[] solve : SOLVES) {
+			benchmarks.add(new Benchmark(solve[0], solve[1], solve[2]) {
+				long run() {
+					Solution solution = Solver.solve(files[0], files[1], new SolverOptions());
+					return solution.getExplored();
+				}
+			});
+		}
+		return benchmarks;
+	}
+
+	/**
+	 * A benchmark on century+180 after 40 moves of a fixed random walk, with the
+	 * moves of that configuration listed.
+	 */
+	private abstract static class TrayBenchmark extends Benchmark {
+		Tray tray;
+		MoveList moves = new MoveList();
+		int next = 0;
+
+		TrayBenchmark(String name) {
+			super(name, "hard1/century+180", "hard1/century+180.goal");
+		}
+
+		void setUp() {
+			tray = new Tray(files[0], files[1]);
+			Random random = new Random(0);
+			for (int i = 0; i < 40; i++) {
+				tray.getMoves(moves);
+				tray.makeMove(moves.get(random.nextInt(moves.size())));
+			}
+			tray.getMoves(moves);
+		}
+	}
+
+	private static boolean selected(String name, List<String> prefixes) {
+		if (prefixes.isEmpty()) {
+			return true;
+		}
+		for (String prefix : prefixes) {
+			if (name.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static double mean(double[] values) {
+		double sum = 0;
+		for (double value : values) {
+			sum += value;
+		}
+		return sum / values.length;
+	}
+
+	/**
+	 * Returns half the width of the 99.9% confidence interval of the mean, from
+	 * Student's t distribution, or 0 for a single value.
+	 */
+	private static double error(double[] values) {
+		int n = values.length;
+		if (n < 2) {
+			return 0;
+		}
+		double mean = mean(values);
+		double squares = 0;
+		for (double value : values) {
+			squares += (value - mean) * (value - mean);
+		}
+		// two-sided 99.9% quantiles of t for 1..30 degrees of freedom, then the normal one
+		double[] t = {636.62, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587, 4.437, 4.318,
+				4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850, 3.819, 3.792, 3.768, 3.745, 3.725,
+				3.707, 3.690, 3.674, 3.659, 3.646};
+		double quantile = n - 1 <= t.length ? t[n - 2] : 3.291;
+		return quantile * Math.sqrt(squares / (n - 1) / n);
+	}
+
+	private static String number(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * 		java SolverBenchmark [-w<warm-ups>] [-i<iterations>] [-t<ms>] [-o<file>] [name prefix ...]
+	 *
+	 * -w and -i set the number of warm-up and measured iterations (3 and 5), -t the
+	 * time an iteration runs for (1000ms), and -o writes the JSON to a file instead
+	 * of the standard output. Progress goes to the standard error.
+	 */
+	public static void main(String[] args) throws IOException {
+		int warmups = 3;
+		int iterations = 5;
+		long time = 1000;
+		String output = null;
+		List<String> prefixes = new ArrayList<String>();
+		for (String arg : args) {
+			try {
+				if (arg.startsWith("-w")) {
+					warmups = Integer.parseInt(arg.substring(2));
+				} else if (arg.startsWith("-i")) {
+					iterations = Integer.parseInt(arg.substring(2));
+				} else if (arg.startsWith("-t")) {
+					time = Long.parseLong(arg.substring(2));
+				} else if (arg.startsWith("-o")) {
+					output = arg.substring(2);
+				} else if (arg.startsWith("-")) {
+					throw new IllegalArgumentException("Invalid input arguments");
+				} else {
+					prefixes.add(arg);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad number: " + arg);
+			}
+		}
+		String json = new SolverBenchmark(warmups, iterations, time).run(prefixes, System.err);
+		if (output == null) {
+			System.out.print(json);
+		} else {
+			Writer out = new FileWriter(output);
+			try {
+				out.write(json);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,402 @@
+import java.io.*;
+
+/**
+ * The search settings chosen on the command line, next to the '-o' debugging
+ * flags. Every option is a single argument starting with '-' and a letter:
+ *
+ * 		-m<mode>	how far a block may travel in one move of the search:
+ * 					unit (one cell, the default), slide (any distance in a
+ * 					straight line) or path (straight slides plus L-shaped paths
+ * 					with one turn). The printed solution always uses one-cell moves.
+ * 		-s<search>	the search strategy: greedy (best-first on the score alone),
+ * 					bfs (fewest moves), astar (fewest moves, using the score;
+ * 					shortest only with one-cell moves and a score that never
+ * 					overestimates), idastar (A* in depth-first passes, for
+ * 					little memory),
+ * 					weighted<w> (A* with the score counted w times, w = 2 if
+ * 					omitted), bidirectional (bfs from both ends when the goal
+ * 					places every block, otherwise bfs), parallel (bfs expanding
+ * 					each layer on several threads) or external (bfs keeping its
+ * 					layers in files, for searches bigger than memory; the files go
+ * 					in the directory given as external:<dir>, by default the
+ * 					system's temporary directory). By default goals that place
+ * 					every block are solved bidirectionally and others greedily.
+ * 		-p<n>		the number of threads for -sparallel (default: one per core).
+ * 		-h<score>	the score that guides greedy, astar, idastar and weighted:
+ * 					manhattan (distance from each goal block to the nearest block
+ * 					of its size), assignment (distance of the best pairing of
+ * 					distinct blocks with goal blocks) or blocking (assignment plus
+ * 					one for each other block in the way of a goal block, the
+ * 					default) or pattern (blocking, or the distance in a
+ * 					PatternDatabase if larger). None of them overestimates with
+ * 					one-cell moves; with -mslide or -mpath any of them can, as
+ * 					one move may cover several cells.
+ * 					Pattern databases are kept in the directory given as
+ * 					pattern:<dir> (default: pdb), and built there when missing.
+ *
+ * 		-f			fold mirror images of configurations together during greedy,
+ * 					bfs, astar and weighted searches when the goal is its own
+ * 					mirror image, so each pair is explored once.
+ *
+ * 		-c[<dir>]	remember the puzzles solved, and answer any rotation or
+ * 					reflection of one of them without searching (see
+ * 					SolutionCache). Plain -c remembers them for the life of a
+ * 					batch or daemon; -c<dir> keeps them in a SolutionStore in dir,
+ * 					shared by every run and process that names it.
+ *
+ * 		-k<file>	save greedy, bfs, astar and weighted searches to a checkpoint
+ * 					file every 30 seconds, and resume from it when it exists, so
+ * 					a search that is killed carries on when run again (see
+ * 					Checkpoint). The file is deleted once the search ends. A
+ * 					daemon (-d) does not take -k.
+ *
+ * 		-i[<ms>]	print the search's counters as a line of JSON to the standard
+ * 					error every ms milliseconds (default 1000), and show them
+ * 					through JMX while it runs (see SearchStats).
+ *
+ * 		-e<format>	how Solver prints the solution: text ("row col row col" per
+ * 					one-cell move, the default) or binary (an int per move, for
+ * 					programs; see SolutionWriter).
+ *
+ * Solver also takes '-b <manifest>' to solve a whole suite in one JVM ('-' reads
+ * the manifest from the standard input) and '-d<port>' to answer puzzles sent to
+ * a local port; see BatchSolver.
+ */
+public class SolverOptions {
+
+	public static final int GREEDY = 0;
+	public static final int BFS = 1;
+	public static final int ASTAR = 2;
+	public static final int IDASTAR = 3;
+	public static final int WEIGHTED = 4;
+	public static final int BIDIRECTIONAL = 5;
+	public static final int AUTOMATIC = 6;
+	public static final int PARALLEL = 7;
+	public static final int EXTERNAL = 8;
+
+	/**Heuristics**/
+	public static final int MANHATTAN = 0;
+	public static final int ASSIGNMENT = 1;
+	public static final int BLOCKING = 2;
+	public static final int PATTERN = 3;
+
+	/**Weighted A* weights are kept in quarters so that w may be a fraction.**/
+	private static final int WEIGHT_SCALE = 4;
+
+	/**The default time between samples of -i, in milliseconds.**/
+	public static final long DEFAULT_STATS_INTERVAL = 1000;
+
+	private int moveMode = Tray.UNIT_MOVES;
+	private int strategy = AUTOMATIC;
+	private double weight = 2;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int heuristic = BLOCKING;
+	private File patternDir = new File("pdb");
+	private File externalDir = null;
+	private boolean fold = false;
+	private SolutionCache cache = null;
+	private File checkpointFile = null;
+	private long checkpointInterval = Checkpoint.DEFAULT_INTERVAL;
+	private long statsInterval = 0;
+	private int outputFormat = SolutionWriter.TEXT;
+	private Debug debug = new Debug();
+
+	/**
+	 * Applies a command line option.
+	 *
+	 * @param arg	an argument such as "-mslide".
+	 * @throws IllegalArgumentException if the option is not recognized.
+	 */
+	public void parse(String arg) {
+		if (arg.length() < 2 || arg.charAt(0) != '-') {
+			throw new IllegalArgumentException("Not an option: " + arg);
+		}
+		String value = arg.substring(2);
+		switch (arg.charAt(1)) {
+		case 'm':
+			if (value.equals("unit")) {
+				moveMode = Tray.UNIT_MOVES;
+			} else if (value.equals("slide")) {
+				moveMode = Tray.SLIDE_MOVES;
+			} else if (value.equals("path")) {
+				moveMode = Tray.PATH_MOVES;
+			} else {
+				throw new IllegalArgumentException("No such move mode: " + value);
+			}
+			break;
+		case 's':
+			if (value.equals("greedy")) {
+				strategy = GREEDY;
+			} else if (value.equals("bfs")) {
+				strategy = BFS;
+			} else if (value.equals("astar")) {
+				strategy = ASTAR;
+			} else if (value.equals("idastar")) {
+				strategy = IDASTAR;
+			} else if (value.equals("parallel")) {
+				strategy = PARALLEL;
+			} else if (value.equals("bidirectional")) {
+				strategy = BIDIRECTIONAL;
+			} else if (value.equals("external")) {
+				strategy = EXTERNAL;
+			} else if (value.startsWith("external:") && value.length() > "external:".length()) {
+				strategy = EXTERNAL;
+				externalDir = new File(value.substring("external:".length()));
+			} else if (value.startsWith("weighted")) {
+				strategy = WEIGHTED;
+				if (value.length() > "weighted".length()) {
+					try {
+						weight = Double.parseDouble(value.substring("weighted".length()));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Bad weight: " + value);
+					}
+					if (!(weight >= 1)) {
+						throw new IllegalArgumentException("Weight must be at least 1: " + value);
+					}
+				}
+			} else {
+				throw new IllegalArgumentException("No such search strategy: " + value);
+			}
+			break;
+		case 'p':
+			try {
+				threads = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad thread count: " + value);
+			}
+			if (threads <= 0) {
+				throw new IllegalArgumentException("Need at least one thread: " + value);
+			}
+			break;
+		case 'f':
+			if (value.length() > 0) {
+				throw new IllegalArgumentException("No such option: " + arg);
+			}
+			fold = true;
+			break;
+		case 'c':
+			if (value.length() == 0) {
+				cache = new SolutionCache();
+			} else {
+				try {
+					cache = new SolutionCache(SolutionStore.open(new File(value), SolutionStore.DEFAULT_LIMIT));
+				} catch (IOException e) {
+					throw new IllegalArgumentException("Cannot keep solutions in " + value + ": " + e.getMessage());
+				}
+			}
+			break;
+		case 'k':
+			if (value.length() == 0) {
+				throw new IllegalArgumentException("No checkpoint file: " + arg);
+			}
+			checkpointFile = new File(value);
+			break;
+		case 'i':
+			if (value.length() == 0) {
+				statsInterval = DEFAULT_STATS_INTERVAL;
+			} else {
+				try {
+					statsInterval = Long.parseLong(value);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Bad interval: " + value);
+				}
+				if (statsInterval <= 0) {
+					throw new IllegalArgumentException("Interval must be positive: " + value);
+				}
+			}
+			break;
+		case 'h':
+			if (value.equals("manhattan")) {
+				heuristic = MANHATTAN;
+			} else if (value.equals("assignment")) {
+				heuristic = ASSIGNMENT;
+			} else if (value.equals("blocking")) {
+				heuristic = BLOCKING;
+			} else if (value.equals("pattern")) {
+				heuristic = PATTERN;
+			} else if (value.startsWith("pattern:") && value.length() > "pattern:".length()) {
+				heuristic = PATTERN;
+				patternDir = new File(value.substring("pattern:".length()));
+			} else {
+				throw new IllegalArgumentException("No such heuristic: " + value);
+			}
+			break;
+		case 'e':
+			if (value.equals("text")) {
+				outputFormat = SolutionWriter.TEXT;
+			} else if (value.equals("binary")) {
+				outputFormat = SolutionWriter.BINARY;
+			} else {
+				throw new IllegalArgumentException("No such output format: " + value);
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("No such option: " + arg);
+		}
+	}
+
+	public int getMoveMode() {
+		return moveMode;
+	}
+
+	public void setMoveMode(int mode) {
+		moveMode = mode;
+	}
+
+	/**
+	 * Returns a new instance of the chosen search strategy.
+	 */
+	public SearchStrategy getStrategy() {
+		switch (strategy) {
+		case BFS:
+			return new BreadthFirstSearch();
+		case ASTAR:
+			return new BestFirstSearch(1, 1);
+		case IDASTAR:
+			return new IterativeDeepeningSearch();
+		case WEIGHTED:
+			return new BestFirstSearch(WEIGHT_SCALE, (int) Math.round(weight * WEIGHT_SCALE));
+		case BIDIRECTIONAL:
+			return new BidirectionalSearch(new BreadthFirstSearch());
+		case GREEDY:
+			return new BestFirstSearch(0, 1);
+		case PARALLEL:
+			return new ParallelBreadthFirstSearch(threads);
+		case EXTERNAL:
+			return new ExternalBreadthFirstSearch(externalDir, ExternalBreadthFirstSearch.RUN_RECORDS);
+		default:
+			return new BidirectionalSearch(new BestFirstSearch(0, 1));
+		}
+	}
+
+	/**
+	 * Returns a new instance of the chosen heuristic for a puzzle.
+	 */
+	public Heuristic newHeuristic(Puzzle puzzle) {
+		switch (heuristic) {
+		case MANHATTAN:
+			return new ManhattanHeuristic(puzzle);
+		case ASSIGNMENT:
+			return new AssignmentHeuristic(puzzle, false);
+		case PATTERN:
+			return new PatternHeuristic(puzzle, patternDir);
+		default:
+			return new AssignmentHeuristic(puzzle, true);
+		}
+	}
+
+	/**
+	 * Returns true if searches should fold mirror images together.
+	 */
+	public boolean getFold() {
+		return fold;
+	}
+
+	public void setFold(boolean fold) {
+		this.fold = fold;
+	}
+
+	/**
+	 * Returns the cache shared by the solves made with these options, or null.
+	 */
+	public SolutionCache getSolutionCache() {
+		return cache;
+	}
+
+	public void setSolutionCache(SolutionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the file searches checkpoint to, or null.
+	 */
+	public File getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	public void setCheckpointFile(File file) {
+		checkpointFile = file;
+	}
+
+	/**
+	 * Refuses options that checkpoint searches, for callers that run several
+	 * searches with them at once: every search would save to and delete the one
+	 * checkpoint file.
+	 *
+	 * @param caller	what runs the searches, for the message.
+	 * @throws IllegalArgumentException	if there is a checkpoint file.
+	 */
+	public void checkConcurrent(String caller) {
+		if (checkpointFile != null) {
+			throw new IllegalArgumentException(caller + " cannot checkpoint: its searches would share one file.");
+		}
+	}
+
+	/**
+	 * Returns the time between checkpoints, in milliseconds.
+	 */
+	public long getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(long interval) {
+		checkpointInterval = interval;
+	}
+
+	/**
+	 * Returns the time between samples of the search's counters, in milliseconds,
+	 * or 0 if they are not sampled.
+	 */
+	public long getStatsInterval() {
+		return statsInterval;
+	}
+
+	public void setStatsInterval(long interval) {
+		statsInterval = interval;
+	}
+
+	/**
+	 * Returns the format Solver prints solutions in, SolutionWriter.TEXT or BINARY.
+	 */
+	public int getOutputFormat() {
+		return outputFormat;
+	}
+
+	public void setOutputFormat(int format) {
+		outputFormat = format;
+	}
+
+	/**
+	 * Returns the chosen heuristic, MANHATTAN, ASSIGNMENT, BLOCKING or PATTERN.
+	 */
+	public int getHeuristic() {
+		return heuristic;
+	}
+
+	public void setHeuristic(int heuristic) {
+		this.heuristic = heuristic;
+	}
+
+	public void setStrategy(int strategy) {
+		this.strategy = strategy;
+	}
+
+	public void setWeight(double weight) {
+		this.weight = weight;
+	}
+
+	/**
+	 * Returns the '-o' debugging flags of the solve.
+	 */
+	public Debug getDebug() {
+		return debug;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+}
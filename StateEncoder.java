@@ -0,0 +1,223 @@
+import java.util.*;
+
+/**
+ * The canonical encoding of the tray configurations of one puzzle. Blocks of the
+ * same length and width are interchangeable, so a configuration is fully described
+ * by where each size class has blocks. Every block is given an int code
+ *
+ * 		sizeClass * cells + row * trayWidth + col
+ *
+ * and a configuration is the sorted array of its block codes. Two configurations
+ * are the same exactly when their sorted code arrays are equal. The packed form of
+ * that array (bitsPerCode bits per block, back to back) is what gets stored in the
+ * visited set.
+ *
+ * The 64-bit hash of a configuration is the XOR of a pseudo-random value for each
+ * block code (Zobrist hashing), so moving a block from code a to code b changes the
+ * hash by zobrist(a) ^ zobrist(b) and never needs to look at the other blocks.
+ */
+public class StateEncoder {
+
+	private final int trayLength;
+	private final int trayWidth;
+	private final int cells;
+	private final int blockCount;
+	private final int[] classLength;
+	private final int[] classWidth;
+	private final int bitsPerCode;
+	private final int keyLength;
+
+	/**
+	 * Creates the encoding for a tray of the given dimensions holding the given blocks.
+	 *
+	 * @param length		the number of rows in the tray.
+	 * @param width			the number of columns in the tray.
+	 * @param blockLengths	the length of every block in the tray.
+	 * @param blockWidths	the width of every block in the tray.
+	 */
+	public StateEncoder(int length, int width, int[] blockLengths, int[] blockWidths) {
+		trayLength = length;
+		trayWidth = width;
+		cells = length * width;
+		blockCount = blockLengths.length;
+		long[] sizes = new long[blockCount];
+		for (int i = 0; i < blockCount; i++) {
+			sizes[i] = ((long) blockLengths[i] << 32) | blockWidths[i];
+		}
+		Arrays.sort(sizes);
+		int classes = 0;
+		for (int i = 0; i < blockCount; i++) {
+			if (i == 0 || sizes[i] != sizes[i - 1]) {
+				sizes[classes++] = sizes[i];
+			}
+		}
+		classLength = new int[classes];
+		classWidth = new int[classes];
+		for (int c = 0; c < classes; c++) {
+			classLength[c] = (int) (sizes[c] >>> 32);
+			classWidth[c] = (int) sizes[c];
+		}
+		long codes = (long) Math.max(classes, 1) * Math.max(cells, 1);
+		if (codes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Tray is too large to encode.");
+		}
+		bitsPerCode = Math.max(1, 64 - Long.numberOfLeadingZeros(codes - 1));
+		keyLength = (int) (((long) blockCount * bitsPerCode + 63) / 64);
+	}
+
+	/**
+	 * Returns the size class of blocks with the given dimensions, or -1 if there
+	 * are no such blocks in the tray.
+	 */
+	public int sizeClass(int length, int width) {
+		for (int c = 0; c < classLength.length; c++) {
+			if (classLength[c] == length && classWidth[c] == width) {
+				return c;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the code of a block of the given size class at (row, col).
+	 */
+	public int code(int sizeClass, int row, int col) {
+		return sizeClass * cells + row * trayWidth + col;
+	}
+
+	public int classOf(int code) {
+		return code / cells;
+	}
+
+	public int rowOf(int code) {
+		return (code % cells) / trayWidth;
+	}
+
+	public int colOf(int code) {
+		return code % trayWidth;
+	}
+
+	public int classLength(int sizeClass) {
+		return classLength[sizeClass];
+	}
+
+	public int classWidth(int sizeClass) {
+		return classWidth[sizeClass];
+	}
+
+	/**
+	 * Returns the number of distinct block sizes in the tray.
+	 */
+	public int classCount() {
+		return classLength.length;
+	}
+
+	public int blockCount() {
+		return blockCount;
+	}
+
+	public int trayLength() {
+		return trayLength;
+	}
+
+	public int trayWidth() {
+		return trayWidth;
+	}
+
+	/**
+	 * Returns the number of longs in a packed configuration.
+	 */
+	public int keyLength() {
+		return keyLength;
+	}
+
+	/**
+	 * Returns the Zobrist value of a block code.
+	 */
+	public static long zobrist(int code) {
+		long z = (code + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns the Zobrist hash of a configuration.
+	 *
+	 * @param codes	the block codes of the configuration, in any order.
+	 */
+	public static long hash(int[] codes) {
+		long h = 0;
+		for (int code : codes) {
+			h ^= zobrist(code);
+		}
+		return h;
+	}
+
+	/**
+	 * Replaces one code of a sorted code array by another, keeping it sorted.
+	 *
+	 * @param codes		a sorted array of distinct block codes.
+	 * @param oldCode	a code in the array.
+	 * @param newCode	the code to put in its place, not already in the array.
+	 */
+	public static void replace(int[] codes, int oldCode, int newCode) {
+		int i = Arrays.binarySearch(codes, oldCode);
+		if (i < 0) {
+			throw new IllegalArgumentException("No block with code " + oldCode);
+		}
+		if (newCode > oldCode) {
+			while (i + 1 < codes.length && codes[i + 1] < newCode) {
+				codes[i] = codes[i + 1];
+				i++;
+			}
+		} else {
+			while (i > 0 && codes[i - 1] > newCode) {
+				codes[i] = codes[i - 1];
+				i--;
+			}
+		}
+		codes[i] = newCode;
+	}
+
+	/**
+	 * Packs a sorted code array into dst, bitsPerCode bits per block.
+	 *
+	 * @param codes	the sorted block codes of a configuration.
+	 * @param dst	an array of at least keyLength() longs.
+	 */
+	public void pack(int[] codes, long[] dst) {
+		Arrays.fill(dst, 0, keyLength, 0L);
+		long bit = 0;
+		for (int i = 0; i < blockCount; i++) {
+			int word = (int) (bit >>> 6);
+			int shift = (int) (bit & 63);
+			dst[word] |= (long) codes[i] << shift;
+			if (shift + bitsPerCode > 64) {
+				dst[word + 1] |= (long) codes[i] >>> (64 - shift);
+			}
+			bit += bitsPerCode;
+		}
+	}
+
+	/**
+	 * Unpacks a packed configuration into its sorted code array.
+	 *
+	 * @param key	a packed configuration.
+	 * @param codes	an array of at least blockCount() ints.
+	 */
+	public void unpack(long[] key, int[] codes) {
+		long codeMask = (1L << bitsPerCode) - 1;
+		long bit = 0;
+		for (int i = 0; i < blockCount; i++) {
+			int word = (int) (bit >>> 6);
+			int shift = (int) (bit & 63);
+			long value = key[word] >>> shift;
+			if (shift + bitsPerCode > 64) {
+				value |= key[word + 1] << (64 - shift);
+			}
+			codes[i] = (int) (value & codeMask);
+			bit += bitsPerCode;
+		}
+	}
+}
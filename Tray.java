@@ -1,541 +1,913 @@
 import java.util.*;
 
-import java.util.Map.Entry;
-
 /**
- * A Tray configuration represented by its width, length, and the adjacency of 
- * the Blocks it contains.The adjacency list is implemented with a Map of Block 
- * keys to their Array (length 4) values. The Array values contain info about 
- * each of the Block's 4 edges. Indices 0,1,2,3 correspond to TOP_EDGE, RIGHT_EDGE, 
- * BOTTOM_EDGE, and LEFT_EDGE respectively and they hold Lists of other blocks touching
- * that edge (empty if none) or null if the edge is against the side of the Tray.
+ * A Tray configuration represented by its width, length, and the positions of
+ * the Blocks it contains. Blocks are numbered 0..n-1 and kept in primitive arrays
+ * (size class, row, column), and an occupancy grid maps every cell of the tray to
+ * the block covering it (block + 1, or 0 if the cell is empty).
+ *
+ * Each block also carries a 4-bit mask of the directions it can move one cell in,
+ * and the blocks with a non-empty mask are kept in a movable list. A move only
+ * changes the masks of the moved block and the blocks along its old and new
+ * edges, so only those are recomputed (by scanning their edges in the grid),
+ * and generating moves only has to look at blocks that can actually move.
+ *
+ * A Tray is mutable: the solver keeps one Tray and applies and reverts moves on it
+ * in place with makeMove/undoMove, or jumps to another configuration with load.
+ * Configurations themselves are stored in the canonical encoding of StateEncoder.
+ * The number of blocks standing where the goal wants a block of their size is kept
+ * up to date the same way, so checking for the goal is one comparison.
+ *
+ * The dimensions, encoding, goal and options are kept in the Tray's Puzzle, which
+ * its copies share; none of it is static, so separate solves never interfere.
  *
  */
-public class Tray implements Comparable<Tray>{
-	
-	/**
-	 * @param args
-	 */
+public class Tray {
+
+	/**Move Modes**/
+	public static final int UNIT_MOVES = 0;
+	public static final int SLIDE_MOVES = 1;
+	public static final int PATH_MOVES = 2;
+
 	private static final int TOP_EDGE = 0;
 	private static final int RIGHT_EDGE = 1;
 	private static final int BOTTOM_EDGE = 2;
 	private static final int LEFT_EDGE = 3;
-	private static final int NOT_TOUCHING = -1;
-	private static int trayLength;
-	private static int trayWidth;
-	private Tray myParent = null;
-	private String stepToGoal = "";
-	private int numberOfMove = 0;
-	private int trayKey = 0;
-	private static ArrayList<String> isChecked;
-	
-	/**Adjacency Relationships**/
-	private HashMap<Block, List<Block>[]> myConfig;
-	
-	/**Goal and Score**/
-	private static HashSet<Block> goalBlocks = new HashSet<Block>();
-	private int myScore = 0;
-	
+	private static final int[] ROW_STEP = {-1, 0, 1, 0};
+	private static final int[] COL_STEP = {0, 1, 0, -1};
+	private Puzzle myPuzzle;
+	private int trayLength;
+	private int trayWidth;
+
+	/**Blocks and Occupancy**/
+	private int myBlockCount;
+	private int[] myClass;
+	private int[] myRow;
+	private int[] myCol;
+	private int[] myGrid;
+
+	/**Mobility**/
+	private int[] myFree;
+	private int[] myMovable;
+	private int[] myMovableIndex;
+	private int myMovableCount;
+	private int[] myMark;
+	private int myStamp = 0;
+	private int myMoveMode = UNIT_MOVES;
+	private int[] myReached;
+	private int myReachStamp = 0;
+
+	/**Canonical Encoding**/
+	private StateEncoder myEncoder;
+	private int[] myCodes;
+	private long myHash;
+	private int[] myScratch;
+	private int[] myRemoved;
+	private int[] myAdded;
+	private int[] myMoved;
+
+	/**Symmetry: the mirror images (see Puzzle.mirror) folded together, and their hashes**/
+	private int mySymmetries;
+	private long[] myMirrorHash;
+	private int[] myMirrored;
+
+	/**Goal: {length, width, row, col} of every goal block, and the number of blocks on goal codes**/
+	private List<int[]> goalBlocks;
+	private int mySatisfied;
+	private Heuristic myHeuristic;
+
 	/**
 	 * Creates a new Tray by retrieving dimensions and Block data
-	 * from the input source. 
+	 * from the input source, with an empty goal.
 	 * @param initialConfig
 	 */
 	public Tray(String initialConfig) {
-		InputSource inputFile = new InputSource(initialConfig);
-		String s = inputFile.readLine();
-		String [] lineVals = s.split(" ");
-		trayLength = Integer.parseInt(lineVals[0]);
-		trayWidth = Integer.parseInt(lineVals[1]);
-		myConfig = new HashMap<Block, List<Block>[]>();
-		isChecked = new ArrayList<String>();
-		while (true) {
-			s = inputFile.readLine ( );
-			if (s == null) {
-				break;
-			}
-			lineVals = s.split(" ");
-			Block newBlock = new Block(lineVals);
-			addBlock(newBlock);
-			trayKey = trayKey + newBlock.blockKey;
-		}
+		this(initialConfig, null, new SolverOptions());
 	}
-	
+
 	/**
 	 * Creates a new Tray by retrieving dimensions and Block data
-	 * from the input source. 
+	 * from the input source, and the goal from the goal file.
 	 * @param initialConfig, finalConfig
 	 */
 	public Tray(String initialConfig, String finalConfig) {
-		String s;
-		String[] lineVals;
-		InputSource finalFile = new InputSource(finalConfig);
-		while (true) {
-			s = finalFile.readLine ( );
-			if (s == null) {
-				break;
+		this(initialConfig, finalConfig, new SolverOptions());
+	}
+
+	/**
+	 * Creates a new Tray by retrieving dimensions and Block data
+	 * from the input source, and the goal from the goal file.
+	 * @param initialConfig	the initial configuration file.
+	 * @param finalConfig	the goal file, or null for an empty goal.
+	 * @param options		the options of the solve.
+	 * @throws TrayFormatException	if a file cannot be read, is not well formed, or
+	 * 								places a block outside the tray or on another block.
+	 */
+	public Tray(String initialConfig, String finalConfig, SolverOptions options) {
+		int[] line = new int[2];
+		int[] blocks = new int[64];
+		int count = 0;
+		int length;
+		int width;
+		TrayReader in = new TrayReader(initialConfig);
+		try {
+			if (!in.next(line)) {
+				throw in.error("missing tray dimensions");
+			}
+			length = line[0];
+			width = line[1];
+			if (length == 0 || width == 0 || (long) length * width > Integer.MAX_VALUE) {
+				throw in.error("bad tray dimensions " + length + " " + width);
+			}
+			boolean[] covered = new boolean[length * width];
+			line = new int[4];
+			while (in.next(line)) {
+				if (line[0] == 0 || line[1] == 0 || (long) line[2] + line[0] > length
+						|| (long) line[3] + line[1] > width) {
+					throw in.error("block does not fit in the tray");
+				}
+				for (int i = line[2]; i < line[2] + line[0]; i++) {
+					for (int j = line[3]; j < line[3] + line[1]; j++) {
+						if (covered[i * width + j]) {
+							throw in.error("block overlaps another block");
+						}
+						covered[i * width + j] = true;
+					}
+				}
+				if (count == blocks.length) {
+					blocks = Arrays.copyOf(blocks, count * 2);
+				}
+				System.arraycopy(line, 0, blocks, count, 4);
+				count += 4;
+			}
+		} finally {
+			in.close();
+		}
+		ArrayList<int[]> goal = new ArrayList<int[]>();
+		if (finalConfig != null) {
+			in = new TrayReader(finalConfig);
+			try {
+				int[] goalBlock = new int[4];
+				while (in.next(goalBlock)) {
+					goal.add(goalBlock);
+					goalBlock = new int[4];
+				}
+			} finally {
+				in.close();
 			}
-			lineVals = s.split(" ");
-			Block newBlock = new Block(lineVals);
-			goalBlocks.add(newBlock);
-		}
-	}
-	
-	/**
-	 * Creates a new Tray using length, width, and Block data passed
-	 * in as arguments, assigning them directly to the object variables.
-	 * @param length
-	 * @param width
-	 * @param blocks
-	 */
-	public Tray(HashSet<Block> blocks, String step, int counter, int key){
-		trayKey = key;
-		myConfig = new HashMap<Block, List<Block>[]>();
-		stepToGoal = step;
-		numberOfMove = counter;
-		for (Block block : blocks) {
-			String a = block.toString();
-			String [] lineVals =  a.split(" ");
-			Block newB = new Block(lineVals);
-			addBlock(newB);
-		}
-	}
-	
-	/**
-	 * Adds a new Block to the Tray by placing it on the adjacency list
-	 * and forming edges with the other blocks it touches. To form an
-	 * edge, the Blocks are added to each others' edgelist
-	 * @param newBlock
-	 */
-	private void addBlock(Block newBlock){
-		List<Block> [] edges = new List [4];
-		for(int i = 0; i < 4; i++){
-			if (newBlock.isTouchingBoundary(i)){
-				edges[i] = null;
+		}
+		setUp(length, width, blocks, count / 4, goal, options);
+	}
+
+	/**
+	 * Creates a new Tray from lists of blocks rather than files, such as the
+	 * smaller puzzles a PatternDatabase is built from.
+	 * @param length	the number of rows in the tray.
+	 * @param width		the number of columns in the tray.
+	 * @param blocks	{length, width, row, col} of every block.
+	 * @param goal		{length, width, row, col} of every goal block.
+	 * @param options	the options of the solve.
+	 */
+	public Tray(int length, int width, List<int[]> blocks, List<int[]> goal, SolverOptions options) {
+		int[] values = new int[blocks.size() * 4];
+		for (int b = 0; b < blocks.size(); b++) {
+			System.arraycopy(blocks.get(b), 0, values, b * 4, 4);
+		}
+		setUp(length, width, values, blocks.size(), goal, options);
+	}
+
+	/**
+	 * Places the blocks and builds the Puzzle; shared by the constructors.
+	 * @param blocks	{length, width, row, col} of every block, one after another.
+	 * @param count		the number of blocks.
+	 */
+	private void setUp(int length, int width, int[] blocks, int count, List<int[]> goal, SolverOptions options) {
+		trayLength = length;
+		trayWidth = width;
+		myBlockCount = count;
+		int[] lengths = new int[myBlockCount];
+		int[] widths = new int[myBlockCount];
+		for (int b = 0; b < myBlockCount; b++) {
+			lengths[b] = blocks[b * 4];
+			widths[b] = blocks[b * 4 + 1];
+		}
+		myEncoder = new StateEncoder(trayLength, trayWidth, lengths, widths);
+		myPuzzle = new Puzzle(trayLength, trayWidth, myEncoder, goal, options);
+		goalBlocks = myPuzzle.getGoal();
+		setMoveMode(options.getMoveMode());
+		myClass = new int[myBlockCount];
+		myRow = new int[myBlockCount];
+		myCol = new int[myBlockCount];
+		myGrid = new int[trayLength * trayWidth];
+		myCodes = new int[myBlockCount];
+		myScratch = new int[myBlockCount];
+		myRemoved = new int[myBlockCount];
+		myAdded = new int[myBlockCount];
+		myMoved = new int[myBlockCount];
+		for (int b = 0; b < myBlockCount; b++) {
+			myClass[b] = myEncoder.sizeClass(blocks[b * 4], blocks[b * 4 + 1]);
+			myRow[b] = blocks[b * 4 + 2];
+			myCol[b] = blocks[b * 4 + 3];
+			placeBlock(b);
+			myCodes[b] = codeOf(b);
+			if (myPuzzle.isGoalCode(myCodes[b])) {
+				mySatisfied++;
 			}
-			else{
-				edges[i] = new ArrayList<Block>();
+		}
+		Arrays.sort(myCodes);
+		myHash = StateEncoder.hash(myCodes);
+		mySymmetries = options.getFold() ? myPuzzle.getSymmetries() : 0;
+		myMirrorHash = new long[4];
+		myMirrored = new int[myBlockCount];
+		for (int t = 1; t < 4; t++) {
+			if ((mySymmetries >> t & 1) != 0) {
+				for (int code : myCodes) {
+					myMirrorHash[t] ^= StateEncoder.zobrist(myPuzzle.mirror(t, code));
+				}
 			}
 		}
-		for (Block otherBlock : myConfig.keySet()) {
-			int contact = newBlock.touchingSide(otherBlock);
-			if (contact >= 0) {
-				edges[contact].add(otherBlock);
-				otherBlock.addContact(newBlock, (contact+2)%4);
+		myFree = new int[myBlockCount];
+		myMovable = new int[myBlockCount];
+		myMovableIndex = new int[myBlockCount];
+		myMark = new int[myBlockCount];
+		Arrays.fill(myMovableIndex, -1);
+		for (int b = 0; b < myBlockCount; b++) {
+			updateMobility(b);
+		}
+	}
+
+	/**
+	 * Creates a copy of another Tray in its current configuration, so that
+	 * several threads can each work on their own board.
+	 * @param other
+	 */
+	public Tray(Tray other) {
+		myPuzzle = other.myPuzzle;
+		trayLength = other.trayLength;
+		trayWidth = other.trayWidth;
+		goalBlocks = other.goalBlocks;
+		mySatisfied = other.mySatisfied;
+		myBlockCount = other.myBlockCount;
+		myClass = other.myClass.clone();
+		myRow = other.myRow.clone();
+		myCol = other.myCol.clone();
+		myGrid = other.myGrid.clone();
+		myFree = other.myFree.clone();
+		myMovable = other.myMovable.clone();
+		myMovableIndex = other.myMovableIndex.clone();
+		myMovableCount = other.myMovableCount;
+		myMark = new int[myBlockCount];
+		myMoveMode = other.myMoveMode;
+		myEncoder = other.myEncoder;
+		myCodes = other.myCodes.clone();
+		myHash = other.myHash;
+		mySymmetries = other.mySymmetries;
+		myMirrorHash = other.myMirrorHash.clone();
+		myMirrored = new int[myBlockCount];
+		myScratch = new int[myBlockCount];
+		myRemoved = new int[myBlockCount];
+		myAdded = new int[myBlockCount];
+		myMoved = new int[myBlockCount];
+		myHeuristic = other.myHeuristic == null ? null : other.myHeuristic.copy();
+	}
+
+	/**
+	 * Marks the cells covered by block b in the occupancy grid.
+	 * @param b
+	 */
+	private void placeBlock(int b) {
+		int length = myEncoder.classLength(myClass[b]);
+		int width = myEncoder.classWidth(myClass[b]);
+		if (myRow[b] < 0 || myCol[b] < 0 || myRow[b] + length > trayLength || myCol[b] + width > trayWidth) {
+			throw new IllegalStateException("Move out of the tray");
+		}
+		for (int i = myRow[b]; i < myRow[b] + length; i++) {
+			for (int j = myCol[b]; j < myCol[b] + width; j++) {
+				if (myGrid[i * trayWidth + j] != 0) {
+					throw new IllegalStateException("Overlap with another block.");
+				}
+				myGrid[i * trayWidth + j] = b + 1;
 			}
 		}
-		myConfig.put(newBlock, edges);
 	}
-	
+
+	/**
+	 * Clears the cells covered by block b in the occupancy grid.
+	 * @param b
+	 */
+	private void removeBlock(int b) {
+		int length = myEncoder.classLength(myClass[b]);
+		int width = myEncoder.classWidth(myClass[b]);
+		for (int i = myRow[b]; i < myRow[b] + length; i++) {
+			for (int j = myCol[b]; j < myCol[b] + width; j++) {
+				myGrid[i * trayWidth + j] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns the canonical code of block b: its size class and position.
+	 */
+	private int codeOf(int b) {
+		return myEncoder.code(myClass[b], myRow[b], myCol[b]);
+	}
+
 	/**
 	 * Returns a "score" a move merits. Score determines the location a resulting tray configuration is placed on the priorityqueue.
+	 * The score comes from the Heuristic chosen in the options, which is created on the
+	 * first call and from then on updated as blocks move, so searches that never ask
+	 * for a score never pay for it.
 	 */
 	public int setScore() {
-		int min = 512;
-		for (Block goalBlock: goalBlocks) {
-			for (Block block: myConfig.keySet()) {
-				if(block.getLength() == goalBlock.getLength() && block.getWidth() == goalBlock.getWidth()){
-					int tmp = Math.abs(block.getRow() - goalBlock.getRow()) + Math.abs(block.getCol() - goalBlock.getCol());
-					min = Math.min(min, tmp);
+		if (myHeuristic == null) {
+			myHeuristic = myPuzzle.getOptions().newHeuristic(myPuzzle);
+			myHeuristic.reset(myCodes);
+		}
+		return myHeuristic.score();
+	}
+
+	/**
+	 * Moves a block in place. The block whose upper left corner is at the
+	 * move's from cell ends up with its upper left corner at the to cell.
+	 *
+	 * @param move	the move to make (see Move).
+	 */
+	public void makeMove(long move) {
+		int from = Move.from(move);
+		int to = Move.to(move);
+		int b = myGrid[from] - 1;
+		if (b < 0 || myRow[b] * trayWidth + myCol[b] != from) {
+			throw new IllegalArgumentException("No block at " + from / trayWidth + " " + from % trayWidth);
+		}
+		int oldCode = codeOf(b);
+		removeBlock(b);
+		myRow[b] = to / trayWidth;
+		myCol[b] = to % trayWidth;
+		placeBlock(b);
+		int newCode = codeOf(b);
+		StateEncoder.replace(myCodes, oldCode, newCode);
+		myHash ^= StateEncoder.zobrist(oldCode) ^ StateEncoder.zobrist(newCode);
+		moveMirrors(oldCode, newCode);
+		moveGoal(oldCode, newCode);
+		if (myHeuristic != null) {
+			myHeuristic.moved(oldCode, newCode);
+		}
+		myStamp++;
+		updateNeighbours(from / trayWidth, from % trayWidth, getLength(b), getWidth(b));
+		updateNeighbours(myRow[b], myCol[b], getLength(b), getWidth(b));
+		myMark[b] = myStamp;
+		updateMobility(b);
+	}
+
+	/**
+	 * Reverts a move made with makeMove.
+	 *
+	 * @param move	the move to take back.
+	 */
+	public void undoMove(long move) {
+		makeMove(Move.reverse(move));
+	}
+
+	/**
+	 * Chooses which moves getMoves generates: UNIT_MOVES (one cell), SLIDE_MOVES
+	 * (every distance in a straight line) or PATH_MOVES (straight slides plus
+	 * L-shaped paths through empty cells).
+	 * @param mode
+	 */
+	public void setMoveMode(int mode) {
+		if (mode != UNIT_MOVES && mode != SLIDE_MOVES && mode != PATH_MOVES) {
+			throw new IllegalArgumentException("No such move mode.");
+		}
+		myMoveMode = mode;
+	}
+
+	/**
+	 * Adds every legal move of the current configuration to moves, according to the move mode.
+	 *
+	 * @param moves	the list to fill; it is cleared first.
+	 */
+	public void getMoves(MoveList moves) {
+		moves.clear();
+		for (int k = 0; k < myMovableCount; k++) {
+			int b = myMovable[k];
+			int from = myRow[b] * trayWidth + myCol[b];
+			if (myMoveMode == UNIT_MOVES) {
+				for (int i = 0; i < 4; i++) {
+					if ((myFree[b] & (1 << i)) != 0) {
+						moves.add(Move.of(from, from + ROW_STEP[i] * trayWidth + COL_STEP[i]));
+					}
 				}
+			} else {
+				addSlides(b, moves);
 			}
-			myScore = myScore + min;
-		}
-		return myScore;
-	}
-	
-	/**
-	 * Takes a block and a direction and moves that block towards the given direction.
-	 * 
-	 * @param b			block to be moved.
-	 * @param direction	the direction the block is to be moved.
-	 * @return			the resulting tray configuration after the move.
-	 */
-	public Tray makeMove(Block b, int direction){
-		Tray result = null;
-		//{Start Debugging!}
-		if (Debug.printMoves == Debug.doDebug) {
-			String[] dirInfo = new String[4];
-			dirInfo[0] = "up";
-			dirInfo[1] = "right";
-			dirInfo[2] = "down";
-			dirInfo[3] = "left";
-            System.out.println("{Debugging} Move " + b.toString() + " " + dirInfo[direction]);
-        }
-		//{End Debugging...}
-		Block newB = b.shiftBlock(direction);
-		HashSet<Block> blocks = new HashSet<Block>(myConfig.keySet());
-		String step = b.getRow() + " " + b.getCol() + " " + newB.getRow() + " " + newB.getCol();
-		blocks.remove(b);
-		blocks.add(newB);
-		int temp = trayKey - b.getBlockKey() + newB.getBlockKey();
-		String block = String.valueOf(temp);
-		if (!isChecked.contains(block)) {
-			isChecked.add(block);
-		    result = new Tray(blocks, step, numberOfMove+1, temp);
-		}
-		return result;
-	}
-	
-	/**
-	 * A method that returns the list of moves a configuration has undergone thus far.
-	 * 
-	 * @return	Returns an ArrayList of Tray (tray configurations) as a result from the moves
-	 */
-	public ArrayList<Tray> getMoves(){
-		ArrayList<Tray> moves = new ArrayList<Tray>();
-		for (Entry<Block, List<Block>[]> entry : myConfig.entrySet()) {
-			Block b = entry.getKey();
-			List<Block> [] edges = entry.getValue();
-			for(int i = 0; i<4; i++){
-				if (edges[i] != null && edges[i].isEmpty()) {
-					Tray nextTray = makeMove(b, i);
-					if (nextTray != null) {
-					    nextTray.myParent = this;
-					    nextTray.myScore = nextTray.setScore();
-					    moves.add(nextTray);
+		}
+	}
+
+	/**
+	 * Adds the multi-cell moves of block b: every distance it can slide in each
+	 * direction and, in PATH_MOVES mode, every place it can then slide to at a
+	 * right angle. Each destination is only added once.
+	 */
+	private void addSlides(int b, MoveList moves) {
+		if (myReached == null) {
+			myReached = new int[myGrid.length];
+		}
+		myReachStamp++;
+		int length = getLength(b);
+		int width = getWidth(b);
+		int from = myRow[b] * trayWidth + myCol[b];
+		myReached[from] = myReachStamp;
+		// Take the block off the grid so that the cells it leaves count as empty.
+		removeBlock(b);
+		for (int i = 0; i < 4; i++) {
+			int row = myRow[b];
+			int col = myCol[b];
+			while (canShift(row, col, length, width, i)) {
+				row += ROW_STEP[i];
+				col += COL_STEP[i];
+				int cell = row * trayWidth + col;
+				if (myReached[cell] != myReachStamp) {
+					myReached[cell] = myReachStamp;
+					moves.add(Move.of(from, cell));
+				}
+				if (myMoveMode != PATH_MOVES) {
+					continue;
+				}
+				for (int turn = 1; turn < 4; turn += 2) {
+					int j = (i + turn) % 4;
+					int bentRow = row;
+					int bentCol = col;
+					while (canShift(bentRow, bentCol, length, width, j)) {
+						bentRow += ROW_STEP[j];
+						bentCol += COL_STEP[j];
+						int bentCell = bentRow * trayWidth + bentCol;
+						if (myReached[bentCell] != myReachStamp) {
+							myReached[bentCell] = myReachStamp;
+							moves.add(Move.of(from, bentCell, COL_STEP[i] != 0));
+						}
 					}
 				}
 			}
 		}
-		return moves;
+		placeBlock(b);
+	}
+
+	/**
+	 * Determines whether a rectangle can move one cell in a direction: the cells
+	 * along that side are inside the tray and empty in the grid.
+	 */
+	private boolean canShift(int row, int col, int length, int width, int direction) {
+		if (direction == TOP_EDGE || direction == BOTTOM_EDGE) {
+			row = direction == TOP_EDGE ? row - 1 : row + length;
+			if (row < 0 || row >= trayLength) {
+				return false;
+			}
+			for (int j = col; j < col + width; j++) {
+				if (myGrid[row * trayWidth + j] != 0) {
+					return false;
+				}
+			}
+		} else {
+			col = direction == LEFT_EDGE ? col - 1 : col + width;
+			if (col < 0 || col >= trayWidth) {
+				return false;
+			}
+			for (int i = row; i < row + length; i++) {
+				if (myGrid[i * trayWidth + col] != 0) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Recomputes the directions block b can move in and its place on the movable list.
+	 * @param b
+	 */
+	private void updateMobility(int b) {
+		int free = 0;
+		for (int i = 0; i < 4; i++) {
+			if (isFree(b, i)) {
+				free |= 1 << i;
+			}
+		}
+		myFree[b] = free;
+		if (free != 0 && myMovableIndex[b] < 0) {
+			myMovableIndex[b] = myMovableCount;
+			myMovable[myMovableCount++] = b;
+		} else if (free == 0 && myMovableIndex[b] >= 0) {
+			int last = myMovable[--myMovableCount];
+			myMovable[myMovableIndex[b]] = last;
+			myMovableIndex[last] = myMovableIndex[b];
+			myMovableIndex[b] = -1;
+		}
+	}
+
+	/**
+	 * Recomputes the mobility of every block touching the outside of a rectangle,
+	 * skipping blocks already updated since myStamp was last advanced.
+	 */
+	private void updateNeighbours(int row, int col, int length, int width) {
+		for (int j = col; j < col + width; j++) {
+			updateAt(row - 1, j);
+			updateAt(row + length, j);
+		}
+		for (int i = row; i < row + length; i++) {
+			updateAt(i, col - 1);
+			updateAt(i, col + width);
+		}
+	}
+
+	private void updateAt(int row, int col) {
+		if (row < 0 || col < 0 || row >= trayLength || col >= trayWidth) {
+			return;
+		}
+		int b = myGrid[row * trayWidth + col] - 1;
+		if (b >= 0 && myMark[b] != myStamp) {
+			myMark[b] = myStamp;
+			updateMobility(b);
+		}
+	}
+
+	/**
+	 * Determines whether the row or column of cells along one side of a block is
+	 * inside the tray and empty.
+	 *
+	 * @param b			the block.
+	 * @param direction	the side of the block.
+	 * @return			true if the block can move one cell that way.
+	 */
+	private boolean isFree(int b, int direction) {
+		return canShift(myRow[b], myCol[b], getLength(b), getWidth(b), direction);
+	}
+
+	/**
+	 * Changes the tray into the configuration stored in a key. Only the blocks
+	 * that are in a different place are touched.
+	 *
+	 * @param key	a configuration packed by encode.
+	 */
+	public void load(long[] key) {
+		int[] target = myScratch;
+		myEncoder.unpack(key, target);
+		// Both code arrays are sorted, so the codes only one of them has come out
+		// in increasing order, and the k-th removed and the k-th added code belong
+		// to the same size class.
+		int changed = 0;
+		int added = 0;
+		int i = 0;
+		int j = 0;
+		while (i < myBlockCount && j < myBlockCount) {
+			if (myCodes[i] == target[j]) {
+				i++;
+				j++;
+			} else if (myCodes[i] < target[j]) {
+				myRemoved[changed++] = myCodes[i++];
+			} else {
+				myAdded[added++] = target[j++];
+			}
+		}
+		while (i < myBlockCount) {
+			myRemoved[changed++] = myCodes[i++];
+		}
+		while (j < myBlockCount) {
+			myAdded[added++] = target[j++];
+		}
+		for (int k = 0; k < changed; k++) {
+			int code = myRemoved[k];
+			int b = myGrid[myEncoder.rowOf(code) * trayWidth + myEncoder.colOf(code)] - 1;
+			removeBlock(b);
+			myMoved[k] = b;
+			myHash ^= StateEncoder.zobrist(code);
+		}
+		for (int k = 0; k < changed; k++) {
+			int b = myMoved[k];
+			int code = myAdded[k];
+			myRow[b] = myEncoder.rowOf(code);
+			myCol[b] = myEncoder.colOf(code);
+			placeBlock(b);
+			myHash ^= StateEncoder.zobrist(code);
+			moveMirrors(myRemoved[k], code);
+			moveGoal(myRemoved[k], code);
+			if (myHeuristic != null) {
+				myHeuristic.moved(myRemoved[k], code);
+			}
+		}
+		myStamp++;
+		for (int k = 0; k < changed; k++) {
+			int b = myMoved[k];
+			int code = myRemoved[k];
+			updateNeighbours(myEncoder.rowOf(code), myEncoder.colOf(code), getLength(b), getWidth(b));
+			updateNeighbours(myRow[b], myCol[b], getLength(b), getWidth(b));
+			if (myMark[b] != myStamp) {
+				myMark[b] = myStamp;
+				updateMobility(b);
+			}
+		}
+		myScratch = myCodes;
+		myCodes = target;
+	}
+
+	/**
+	 * Packs the current configuration into key.
+	 *
+	 * @param key	an array of keyLength() longs.
+	 */
+	public void encode(long[] key) {
+		myEncoder.pack(myCodes, key);
+	}
+
+	/**
+	 * Returns the mirror image to store the current configuration as: the one of
+	 * the folded mirror images (and the configuration itself, 0) with the lowest
+	 * hash, so that a configuration and its mirror images choose the same one.
+	 * Always 0 unless folding is on and the goal is symmetric.
+	 */
+	public int canonical() {
+		int best = 0;
+		for (int t = 1; t < 4; t++) {
+			if ((mySymmetries >> t & 1) != 0 && myMirrorHash[t] < hash(best)) {
+				best = t;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Packs a mirror image of the current configuration into key.
+	 *
+	 * @param key		an array of keyLength() longs.
+	 * @param transform	the mirror image (see Puzzle.mirror).
+	 */
+	public void encode(long[] key, int transform) {
+		if (transform == 0) {
+			encode(key);
+			return;
+		}
+		for (int i = 0; i < myBlockCount; i++) {
+			myMirrored[i] = myPuzzle.mirror(transform, myCodes[i]);
+		}
+		Arrays.sort(myMirrored);
+		myEncoder.pack(myMirrored, key);
+	}
+
+	/**
+	 * Returns the Zobrist hash of a mirror image of the current configuration,
+	 * which must be one that is folded.
+	 */
+	public long hash(int transform) {
+		return transform == 0 ? myHash : myMirrorHash[transform];
+	}
+
+	/**
+	 * Returns a move of the current configuration as the same move in a mirror
+	 * image. Must be called before the move is made.
+	 *
+	 * @param move		the move (see Move).
+	 * @param transform	the mirror image.
+	 */
+	public long mirrorMove(long move, int transform) {
+		if (transform == 0) {
+			return move;
+		}
+		int b = myGrid[Move.from(move)] - 1;
+		int from = myPuzzle.mirror(transform, codeOf(b));
+		int to = myPuzzle.mirror(transform, myEncoder.code(myClass[b], Move.to(move) / trayWidth, Move.to(move) % trayWidth));
+		return Move.of(myEncoder.rowOf(from) * trayWidth + myEncoder.colOf(from),
+				myEncoder.rowOf(to) * trayWidth + myEncoder.colOf(to), Move.columnsFirst(move));
+	}
+
+	/**
+	 * Keeps the hashes of the folded mirror images up to date as a block moves.
+	 */
+	private void moveMirrors(int oldCode, int newCode) {
+		for (int t = 1; t < 4; t++) {
+			if ((mySymmetries >> t & 1) != 0) {
+				myMirrorHash[t] ^= StateEncoder.zobrist(myPuzzle.mirror(t, oldCode))
+						^ StateEncoder.zobrist(myPuzzle.mirror(t, newCode));
+			}
+		}
+	}
+
+	/**
+	 * Keeps the count of blocks on goal codes up to date as a block moves.
+	 */
+	private void moveGoal(int oldCode, int newCode) {
+		if (myPuzzle.isGoalCode(oldCode)) {
+			mySatisfied--;
+		}
+		if (myPuzzle.isGoalCode(newCode)) {
+			mySatisfied++;
+		}
+	}
+
+	/**
+	 * Returns the number of longs in an encoded configuration.
+	 */
+	public int keyLength() {
+		return myEncoder.keyLength();
+	}
+
+	/**
+	 * Returns the Zobrist hash of the current configuration.
+	 */
+	public long hash() {
+		return myHash;
 	}
-	
+
 	/**
-	 * Returns the number of moves from the initial.
-	 * @return total moves to get to the state from the initial.
+	 * Returns the context this tray belongs to.
 	 */
-	public int showNumberOfMoves(){
-		return numberOfMove;
+	public Puzzle getPuzzle() {
+		return myPuzzle;
 	}
-	
+
 	/**
-	 * Returns a parent configuration. Null if this happens to be the initial tray configuration.
-	 * 
-	 * @return Returns a tray configuration before the latest move.
+	 * Returns {length, width, row, col} of every block.
 	 */
-	public Tray getParent() {
-		return myParent;
+	public List<int[]> getBlocks() {
+		List<int[]> blocks = new ArrayList<int[]>();
+		for (int b = 0; b < myBlockCount; b++) {
+			blocks.add(new int[] {getLength(b), getWidth(b), myRow[b], myCol[b]});
+		}
+		return blocks;
 	}
-	
+
 	/**
-	 * Gets the initial coordinate of a block before a move and the resulting coordinate after the move.
-	 * 
-	 * @return Returns a String of 4 variables: the initial y and x and the final y and x.
+	 * Returns {length, width, row, col} of the block covering a cell, or null if
+	 * the cell is empty.
+	 *
+	 * @param cell	row * width + col of the cell.
 	 */
-	public String getStep() {
-		return stepToGoal;
+	public int[] blockAt(int cell) {
+		int b = myGrid[cell] - 1;
+		return b < 0 ? null : new int[] {getLength(b), getWidth(b), myRow[b], myCol[b]};
 	}
-	
+
 	/**
-	 * Gets the score of a resulting tray configuration after a move.
-	 * 
-	 * @return Returns an integer value detailing the priority of a move.
+	 * Returns the number of blocks of each size class (see StateEncoder).
 	 */
-	public int getScore() {
-		return myScore;
+	public int[] classCounts() {
+		int[] counts = new int[myEncoder.classCount()];
+		for (int b = 0; b < myBlockCount; b++) {
+			counts[myClass[b]]++;
+		}
+		return counts;
 	}
-	
+
 	/**
-	 * Compares a score between tray configurations to determine their location on a priority queue.
-	 * 
+	 * Returns the number of columns in the tray.
 	 */
-	public int compareTo(Tray otherTray) {
-		return myScore - otherTray.myScore;
+	public int getWidth() {
+		return trayWidth;
+	}
+
+	private int getLength(int b) {
+		return myEncoder.classLength(myClass[b]);
+	}
+
+	private int getWidth(int b) {
+		return myEncoder.classWidth(myClass[b]);
 	}
-	
+
 	/**
-	 * Returns a boolean checking if two tray configurations are the same.
+	 * Returns a boolean checking if two tray configurations are the same, treating
+	 * blocks of the same size as interchangeable.
 	 */
 	public boolean equals(Object otherTray){
-		return ((Tray)otherTray).trayKey == this.trayKey;
+		return otherTray instanceof Tray && Arrays.equals(((Tray)otherTray).myCodes, this.myCodes);
 	}
-	
+
 	/**
-	 * Returns a boolean checking if the goal configuration has been reached.
-	 * 
-	 * @param otherTray	The goal configuration.
-	 * @return			Returns true if goal has been reached, false otherwise.
+	 * Returns the Zobrist hash of the configuration.
 	 */
-	public boolean equalsGoal(Object otherTray){
-		for (Block block : goalBlocks) {
-			if (!myConfig.keySet().contains(block)) {
+	public int hashCode(){
+		return (int) (myHash ^ (myHash >>> 32));
+	}
+
+	/**
+	 * Packs the configuration the goal describes into key, if the goal places
+	 * every block of the tray (the same number of blocks of each size, all
+	 * inside the tray and not overlapping). Otherwise the goal only constrains
+	 * some blocks and there is no single goal configuration.
+	 *
+	 * @param key	an array of keyLength() longs.
+	 * @return		true if the goal is complete and key was filled in.
+	 */
+	public boolean encodeGoal(long[] key) {
+		if (goalBlocks.size() != myBlockCount) {
+			return false;
+		}
+		int[] codes = new int[myBlockCount];
+		int[] classCount = new int[myEncoder.classCount()];
+		boolean[] covered = new boolean[trayLength * trayWidth];
+		for (int b = 0; b < myBlockCount; b++) {
+			classCount[myClass[b]]++;
+		}
+		for (int g = 0; g < myBlockCount; g++) {
+			int[] goalBlock = goalBlocks.get(g);
+			int c = myEncoder.sizeClass(goalBlock[0], goalBlock[1]);
+			if (c < 0 || --classCount[c] < 0 || goalBlock[2] < 0 || goalBlock[3] < 0
+					|| goalBlock[2] + goalBlock[0] > trayLength || goalBlock[3] + goalBlock[1] > trayWidth) {
 				return false;
 			}
+			for (int i = goalBlock[2]; i < goalBlock[2] + goalBlock[0]; i++) {
+				for (int j = goalBlock[3]; j < goalBlock[3] + goalBlock[1]; j++) {
+					if (covered[i * trayWidth + j]) {
+						return false;
+					}
+					covered[i * trayWidth + j] = true;
+				}
+			}
+			codes[g] = myEncoder.code(c, goalBlock[2], goalBlock[3]);
 		}
+		Arrays.sort(codes);
+		myEncoder.pack(codes, key);
 		return true;
 	}
-	
+
+	/**
+	 * Returns the Zobrist hash of a configuration packed by encode or encodeGoal.
+	 */
+	public long hashOf(long[] key) {
+		int[] codes = new int[myBlockCount];
+		myEncoder.unpack(key, codes);
+		return StateEncoder.hash(codes);
+	}
+
+	/**
+	 * Returns a boolean checking if the goal configuration has been reached. No two
+	 * blocks share a code, so the goal is met exactly when as many blocks are on
+	 * goal codes as the goal has codes.
+	 *
+	 * @return			Returns true if goal has been reached, false otherwise.
+	 */
+	public boolean equalsGoal(){
+		return mySatisfied == myPuzzle.getGoalCount();
+	}
+
     /**
-     * Checks the invariants that make sure none of the blocks overlap and their demensions are negative, and that all blocks 
-     * are completely on the tray. 
-     * 
+     * Checks the invariants that make sure none of the blocks overlap and their demensions are negative, and that all blocks
+     * are completely on the tray.
+     *
      * @return True if all tray invariants hold.
      */
     public boolean isOK() {
     	boolean [][] boardChecker = new boolean [trayLength][trayWidth];
-    	for (Block block : myConfig.keySet()){
-            int startRow = block.getRow();
-            int startCol = block.getCol();
-            int endRow = block.getLength() + startRow;
-            int endCol = block.getWidth() + startCol;
+    	int satisfied = 0;
+    	for (int b = 0; b < myBlockCount; b++){
+            int startRow = myRow[b];
+            int startCol = myCol[b];
+            int endRow = getLength(b) + startRow;
+            int endCol = getWidth(b) + startCol;
             // Checks if block dimensions are not negative number or bigger than the tray dimensions.
             if (startRow < 0 || startCol < 0 || endRow < 0 || endCol < 0) {
             	throw new IllegalStateException("Move out of the tray");
-            } 
+            }
             if (startRow > trayLength || startCol > trayWidth || endRow > trayLength || endCol > trayWidth) {
             	throw new IllegalStateException("Move out of the tray");
             }
-            // Checks if any blocks overlap in the tray
+            // Checks if any blocks overlap in the tray, and that the grid agrees
             for (int i = startRow; i < endRow; i++) {
                     for (int j = startCol; j < endCol; j++) {
                     	if (boardChecker[i][j]) {
                     		throw new IllegalStateException("Overlap with another block.");
+                    	} else if (myGrid[i * trayWidth + j] != b + 1) {
+                    		throw new IllegalStateException("Occupancy grid out of date.");
                     	} else {
                     		boardChecker[i][j] = true;
                     	}
                     }
             }
+            // Checks that the cached mobility of the block is up to date
+            for (int i = 0; i < 4; i++) {
+            	if (((myFree[b] >> i) & 1) != (isFree(b, i) ? 1 : 0)) {
+            		throw new IllegalStateException("Mobility out of date.");
+            	}
+            }
+            if ((myFree[b] != 0) != (myMovableIndex[b] >= 0)) {
+            	throw new IllegalStateException("Movable list out of date.");
+            }
+            if (myPuzzle.isGoalCode(codeOf(b))) {
+            	satisfied++;
+            }
+    	}
+    	if (satisfied != mySatisfied) {
+    		throw new IllegalStateException("Goal count out of date.");
     	}
     	return true;
     }
-	
+
 	/**
 	 * Returns a string representation of a tray configuration.
 	 */
 	public String toString(){
-		String s = "";
-		Iterator<Block> iter = myConfig.keySet().iterator();
-		while(iter.hasNext()){
-			Block b = iter.next();
-			s = s + this.printblock(b) + "\n";
-		}
-		return s;
-	}
-	
-	/**
-	 * Returns a string representation of a block.
-	 * 
-	 * @param b	The block to represented as a string.
-	 * @return	Returns a String representing the block.
-	 */
-	public String printblock(Block b){
-		String s = b.toString() + "\n";
-		for(int i = 0; i<4; i++){
-			List<Block> edge = myConfig.get(b)[i];
-			if(edge == null){
-				s = s + ("Edge " + i + ": touching side " + i + "\n");
-			}
-			else{
-				s = s + ("Edge " + i + ": " + myConfig.get(b)[i] + "\n");
-			}
-		}
-		return s;
-	}
-	
-	//A private Block class
-	private class Block {
-
-		private int myLength;
-		private int myWidth;
-		private int myRow;
-		private int myCol;
-		private String name;
-		private String hashCode;
-		private int blockKey;
-		
-		/**
-		 * A constructor for the block class.
-		 * 
-		 * @param inputLine A string array listing the parameters and location of a block.
-		 */
-		public Block (String [] inputLine) {
-			name = makeSentence(inputLine);
-			hashCode = inputLine[2] + inputLine[3];
-			myLength = Integer.parseInt(inputLine[0]);
-			myWidth = Integer.parseInt(inputLine[1]);
-			myRow = Integer.parseInt(inputLine[2]);
-			myCol = Integer.parseInt(inputLine[3]);
-			blockKey = 107*myLength*myLength*myLength+313*myWidth*myWidth*(myRow*419*myRow+myCol*947*myCol)
-					+ Integer.parseInt(""+myWidth+myLength+myRow+myCol)*Integer.parseInt(""+myCol+myRow+myLength+myWidth);
-		}
-		
-		/**
-		 * Returns up to four integers representing each side a block is touching another block.
-		 * 
-		 * @param b	Block whose sides we're interested in
-		 * @return	Integer(s) representing whether or not the block's side is touching anothers'.
-		 */
-		public int touchingSide(Block b){
-			if (b.myRow > this.myRow - b.myLength && b.myRow < this.myRow + this.myLength){
-				if (b.myCol == this.myCol + this.myWidth){
-					return RIGHT_EDGE;
-				}
-				if (b.myCol == this.myCol - b.myWidth){
-					return LEFT_EDGE;
-				}
-			}
-			if (b.myCol > this.myCol - b.myWidth && b.myCol < this.myCol + this.myWidth){
-				if (b.myRow == this.myRow - b.myLength){
-					return TOP_EDGE;
-				}
-				if (b.myRow == this.myRow + this.myLength){
-					return BOTTOM_EDGE;
-				}
-			}
-			return NOT_TOUCHING;
-		}
-		
-		/**
-		 * Determines whether or not a block's side is touching either another block or the tray boundary.
-		 * 
-		 * @param direction	The block's side we're testing represented by an integer.
-		 * @return			Returns a boolean if it is touching and false otherwise.
-		 */
-		public boolean isTouchingBoundary (int direction) {
-			if (direction == TOP_EDGE){
-				return myRow == 0;
-			}
-			if (direction == BOTTOM_EDGE){
-				return myRow + myLength == trayLength;
-			}
-			if (direction == RIGHT_EDGE){
-				return myCol + myWidth == trayWidth;
-			}
-			if (direction == LEFT_EDGE){
-				return myCol == 0;
-			}
-			throw new IllegalArgumentException("There are only four edges for a block.");
-		}
-		
-		public void addContact(Block newB, int side){
-			List<Block> [] edges = myConfig.get(this);
-			if (edges != null && !edges[side].contains(newB)) {
-			    edges[side].add(newB);
-			    myConfig.put(this, edges);
-			}
-		}
-		
-		/**
-		 * updates a block's info after a move that causes it to come into contact with another block.
-		 * 
-		 * @param newB	The new block it's come into contact with
-		 * @param side	The side of the original block that's now in contact with another block.
-		 */
-		public Block shiftBlock(int direction){
-			Block result;
-			String[] blockInfo = new String[4];
-			blockInfo[0] = myLength + "";
-			blockInfo[1] = myWidth + "";
-			blockInfo[2] = myRow + "";
-			blockInfo[3] = myCol + "";
-			if (direction == TOP_EDGE){
-				int newRow = myRow - 1;
-				blockInfo[2] = newRow + "";
-			} else if (direction == BOTTOM_EDGE){
-				int newRow = myRow + 1;
-				blockInfo[2] = newRow + "";
-			} else if (direction == RIGHT_EDGE){
-				int newCol = myCol + 1;
-				blockInfo[3] = newCol + "";
-			} else if (direction == LEFT_EDGE){
-				int newCol = myCol - 1;
-				blockInfo[3] = newCol + "";
-			}
-			result = new Block(blockInfo);
-			return result;
-			
-		}
-		
-		/**
-		 * Gets the length of a block.
-		 * 
-		 * @return	The integer value of a block's length.
-		 */
-		public int getLength(){
-			return myLength;
-		}
-		
-		/**
-		 * Gets the width of a block.
-		 * 
-		 * @return	The integer value of a block's width.
-		 */
-		public int getWidth(){
-			return myWidth;
-		}
-		
-		/**
-		 * Gets the row location of a block (the blocks distance from the top of the tray)
-		 * 
-		 * @return	The integer value of a block's row.
-		 */
-		public int getRow(){
-			return myRow;
-		}
-		
-		/**
-		 * Gets the column location of a block (the blocks distance from the top of the tray)
-		 * 
-		 * @return	The integer value of a block's column.
-		 */
-		public int getCol(){
-			return myCol;
-		}
-		
-		/**
-		 * returns an integer representation of the block.
-		 * 
-		 * @return	An int representation of the block.
-		 */
-		public int getBlockKey(){
-			return this.blockKey;
-		}
-
-		/**
-		 * Returns a boolean true if two block objects are equal and false otherwise.
-		 * 
-		 */
-		public boolean equals(Object obj){
-			if (((Block)obj).myLength == this.myLength && 
-					((Block)obj).myWidth == this.myWidth &&
-					((Block)obj).myRow == this.myRow && 
-					((Block)obj).myCol == this.myCol){
-				return true;
-			}
-			return false;
-		}
-		
-		/**
-		 * Returns a integer representation of a blocks hashcode.
-		 * 
-		 */
-		public int hashCode(){
-			return Integer.parseInt(hashCode);
-		}
-		
-		/**
-		 * Returns a string representation of a block (The 4 integers representing the block).
-		 */
-		public String toString(){
-			return name;
-		}
-		
-		/**
-		 * Returns a string that results from concatenating a cluster of strings
-		 * 
-		 * @param words	a string array of strings to be concatenated.
-		 * @return		Returns a concatenated final string
-		 */
-		public String makeSentence(String[] words) {
-			   
-			   StringBuffer sentence = new StringBuffer();
-			   for (String w : words) {
-			       sentence.append(w);
-			       sentence.append(" ");
-			    }
-			    return sentence.toString();
+		StringBuilder s = new StringBuilder();
+		for (int b = 0; b < myBlockCount; b++) {
+			s.append(getLength(b)).append(' ').append(getWidth(b)).append(' ')
+					.append(myRow[b]).append(' ').append(myCol[b]).append('\n');
 		}
+		return s.toString();
 	}
 }
-
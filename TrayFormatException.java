@@ -0,0 +1,36 @@
+/**
+ * Thrown when a tray or goal file cannot be read or is not in the expected
+ * format. The message starts with the file and, where there is one, the line
+ * the problem is on, as in "big.tray.4:12: expected 4 numbers".
+ */
+public class TrayFormatException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String fileName;
+	private final int lineNumber;
+
+	/**
+	 * @param fileName		the file being read.
+	 * @param lineNumber	the line the problem is on, counting from 1, or 0 if it is
+	 * 						not on any one line.
+	 * @param message		what is wrong.
+	 */
+	public TrayFormatException(String fileName, int lineNumber, String message) {
+		super(fileName + (lineNumber > 0 ? ":" + lineNumber : "") + ": " + message);
+		this.fileName = fileName;
+		this.lineNumber = lineNumber;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * Returns the line the problem is on, counting from 1, or 0 if it is not on
+	 * any one line.
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+}
@@ -0,0 +1,151 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Reads the numbers of a tray or goal file a line at a time, straight from the
+ * file's bytes into int arrays. Unlike InputSource it makes no String per line,
+ * so reading the 10,000 lines of a big tray allocates nothing but the one buffer
+ * the file is read through.
+ *
+ * A line holds non-negative decimal numbers separated by spaces or tabs, and may
+ * end in "\n" or "\r\n". Blank lines are skipped. Anything else is reported as a
+ * TrayFormatException naming the file and line.
+ */
+public class TrayReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final String fileName;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private int myLineNumber = 0;
+	private boolean atEnd = false;
+
+	/**
+	 * Opens a file.
+	 *
+	 * @param fileName	the file to read.
+	 * @throws TrayFormatException	if the file cannot be opened.
+	 */
+	public TrayReader(String fileName) {
+		this.fileName = fileName;
+		try {
+			channel = new FileInputStream(fileName).getChannel();
+		} catch (IOException e) {
+			throw new TrayFormatException(fileName, 0, "cannot open file (" + e.getMessage() + ")");
+		}
+		buffer.limit(0);
+	}
+
+	/**
+	 * Reads the next line that is not blank.
+	 *
+	 * @param values	where to put the line's numbers; the line must hold exactly
+	 * 					values.length of them.
+	 * @return			false if there are no more lines, in which case values is unchanged.
+	 * @throws TrayFormatException	if the line does not hold values.length numbers
+	 * 								or the file cannot be read.
+	 */
+	public boolean next(int[] values) {
+		int c = skipBlankLines();
+		if (c < 0) {
+			return false;
+		}
+		int count = 0;
+		while (c >= 0 && c != '\n') {
+			if (c == ' ' || c == '\t' || c == '\r') {
+				c = read();
+				continue;
+			}
+			if (c < '0' || c > '9') {
+				throw error("unexpected character '" + (char) c + "'");
+			}
+			long value = 0;
+			do {
+				value = value * 10 + (c - '0');
+				if (value > Integer.MAX_VALUE) {
+					throw error("number too large");
+				}
+				c = read();
+			} while (c >= '0' && c <= '9');
+			if (count == values.length) {
+				throw error("expected " + values.length + " numbers, found more");
+			}
+			values[count++] = (int) value;
+		}
+		if (count < values.length) {
+			throw error("expected " + values.length + " numbers, found " + count);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of the line last read, counting from 1.
+	 */
+	public int lineNumber() {
+		return myLineNumber;
+	}
+
+	/**
+	 * Returns an exception describing a problem with the line last read.
+	 *
+	 * @param message	what is wrong with the line.
+	 */
+	public TrayFormatException error(String message) {
+		return new TrayFormatException(fileName, myLineNumber, message);
+	}
+
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			//nothing was written, so there is nothing to lose
+		}
+	}
+
+	/**
+	 * Moves to the first character of the next line that is not blank, and counts
+	 * the lines passed.
+	 *
+	 * @return	that character, or -1 at the end of the file.
+	 */
+	private int skipBlankLines() {
+		int c = read();
+		myLineNumber++;
+		while (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+			if (c == '\n') {
+				myLineNumber++;
+			}
+			c = read();
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the next byte of the file, or -1 at its end.
+	 */
+	private int read() {
+		if (!buffer.hasRemaining()) {
+			if (atEnd) {
+				return -1;
+			}
+			buffer.clear();
+			try {
+				while (buffer.position() == 0) {
+					if (channel.read(buffer) < 0) {
+						atEnd = true;
+						break;
+					}
+				}
+			} catch (IOException e) {
+				throw new TrayFormatException(fileName, myLineNumber, "cannot read file (" + e.getMessage() + ")");
+			}
+			buffer.flip();
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+		}
+		return buffer.get() & 0xFF;
+	}
+}
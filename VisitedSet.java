@@ -0,0 +1,293 @@
+import java.io.*;
+
+/**
+ * An open-addressing hash set of board encodings. Every key stored in one set
+ * has the same length (the encoding of a tray with a fixed set of blocks), so
+ * the keys are copied back to back into large primitive pages instead of
+ * being kept as objects. The table itself is an int array of entry indices
+ * probed linearly; the 64-bit hash of each entry is stored in front of its
+ * key so most failed probes never have to look at the key at all.
+ *
+ * Entries are never removed. Each entry gets a stable index (0, 1, 2, ...)
+ * in insertion order that callers can use to refer to a state later on.
+ */
+public class VisitedSet {
+
+	private static final int PAGE_SIZE = 1 << 20;
+	private static final int MAX_CAPACITY = 1 << 30;
+	private static final int DEFAULT_CAPACITY = 1 << 12;
+
+	private final int keyLength;
+	private final int stride;
+	private final int entriesPerPage;
+	private long[][] pages;
+	private int[] slots;
+	private int mask;
+	private int size = 0;
+
+	/**
+	 * Creates an empty set for keys of the given length.
+	 * @param keyLength	the number of longs in every key.
+	 */
+	public VisitedSet(int keyLength) {
+		this(keyLength, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty set for keys of the given length with room for
+	 * about expectedSize entries before the table has to grow.
+	 * @param keyLength		the number of longs in every key.
+	 * @param expectedSize	the number of entries to size the table for.
+	 */
+	public VisitedSet(int keyLength, int expectedSize) {
+		if (keyLength < 0) {
+			throw new IllegalArgumentException("Negative key length.");
+		}
+		this.keyLength = keyLength;
+		stride = keyLength + 1;
+		entriesPerPage = Math.max(1, PAGE_SIZE / stride);
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity < MAX_CAPACITY && capacity < 2L * expectedSize) {
+			capacity <<= 1;
+		}
+		slots = new int[capacity];
+		mask = capacity - 1;
+		pages = new long[4][];
+	}
+
+	/**
+	 * Returns a general-purpose 64-bit hash of a key, for callers that do not
+	 * maintain their own.
+	 * @param key	the key to hash.
+	 * @return		the hash of the key.
+	 */
+	public static long hash(long[] key) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (long k : key) {
+			h = (h ^ k) * 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+		return h;
+	}
+
+	/**
+	 * Adds a key to the set.
+	 * @param key	the key, of length keyLength().
+	 * @param hash	the hash of the key.
+	 * @return		the index of the new entry, or -(index + 1) of the existing
+	 * 				entry if the key was already present.
+	 */
+	public int add(long[] key, long hash) {
+		int slot = find(key, hash);
+		if (slots[slot] != 0) {
+			return -slots[slot];
+		}
+		if (size == Integer.MAX_VALUE - 1) {
+			throw new IllegalStateException("Visited set is full.");
+		}
+		int index = size++;
+		long[] page = page(index);
+		int offset = (index % entriesPerPage) * stride;
+		page[offset] = hash;
+		System.arraycopy(key, 0, page, offset + 1, keyLength);
+		slots[slot] = index + 1;
+		if (size > (slots.length >> 1)) {
+			grow();
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the index of a key, or -1 if it is not in the set.
+	 * @param key	the key to look for.
+	 * @param hash	the hash of the key.
+	 * @return		the index of the key's entry or -1.
+	 */
+	public int indexOf(long[] key, long hash) {
+		return slots[find(key, hash)] - 1;
+	}
+
+	/**
+	 * Returns true if the set contains the key.
+	 */
+	public boolean contains(long[] key, long hash) {
+		return indexOf(key, hash) >= 0;
+	}
+
+	/**
+	 * Copies the key of an entry into dst.
+	 * @param index	the index of the entry.
+	 * @param dst	an array of at least keyLength() longs.
+	 */
+	public void getKey(int index, long[] dst) {
+		long[] page = pages[index / entriesPerPage];
+		System.arraycopy(page, (index % entriesPerPage) * stride + 1, dst, 0, keyLength);
+	}
+
+	/**
+	 * Returns the stored hash of an entry.
+	 * @param index	the index of the entry.
+	 */
+	public long getHash(int index) {
+		return pages[index / entriesPerPage][(index % entriesPerPage) * stride];
+	}
+
+	/**
+	 * Returns the number of entries in the set.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of longs in every key.
+	 */
+	public int keyLength() {
+		return keyLength;
+	}
+
+	/**
+	 * Returns a view of the entries added so far. Entries never change once added,
+	 * so the view stays valid, and may be read from another thread, while more
+	 * entries are added to the set.
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(pages.clone(), size, keyLength, entriesPerPage);
+	}
+
+	/**
+	 * Reads a set written by Snapshot.write. Entries keep their indices.
+	 *
+	 * @param in	the stream to read from.
+	 * @throws IOException	if the stream cannot be read.
+	 */
+	public static VisitedSet read(DataInputStream in) throws IOException {
+		int keyLength = in.readInt();
+		int size = in.readInt();
+		if (keyLength < 0 || size < 0) {
+			throw new IOException("Not a visited set.");
+		}
+		VisitedSet set = new VisitedSet(keyLength, size);
+		long[] key = new long[keyLength];
+		for (int index = 0; index < size; index++) {
+			long hash = in.readLong();
+			for (int i = 0; i < keyLength; i++) {
+				key[i] = in.readLong();
+			}
+			if (set.add(key, hash) != index) {
+				throw new IOException("Repeated entry in a visited set.");
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * The entries of a VisitedSet up to some size.
+	 */
+	public static class Snapshot {
+		private final long[][] pages;
+		private final int size;
+		private final int keyLength;
+		private final int entriesPerPage;
+
+		private Snapshot(long[][] pages, int size, int keyLength, int entriesPerPage) {
+			this.pages = pages;
+			this.size = size;
+			this.keyLength = keyLength;
+			this.entriesPerPage = entriesPerPage;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Writes the key length, the size and each entry's hash and key in order.
+		 *
+		 * @param out	the stream to write to.
+		 * @throws IOException	if the stream cannot be written.
+		 */
+		public void write(DataOutputStream out) throws IOException {
+			out.writeInt(keyLength);
+			out.writeInt(size);
+			int stride = keyLength + 1;
+			for (int index = 0; index < size; index++) {
+				long[] page = pages[index / entriesPerPage];
+				int offset = (index % entriesPerPage) * stride;
+				for (int i = 0; i < stride; i++) {
+					out.writeLong(page[offset + i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the slot holding the key, or the empty slot where it belongs.
+	 */
+	private int find(long[] key, long hash) {
+		int slot = spread(hash) & mask;
+		while (true) {
+			int entry = slots[slot];
+			if (entry == 0 || matches(entry - 1, key, hash)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean matches(int index, long[] key, long hash) {
+		long[] page = pages[index / entriesPerPage];
+		int offset = (index % entriesPerPage) * stride;
+		if (page[offset] != hash) {
+			return false;
+		}
+		offset++;
+		for (int i = 0; i < keyLength; i++) {
+			if (page[offset + i] != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long[] page(int index) {
+		int p = index / entriesPerPage;
+		if (p == pages.length) {
+			long[][] bigger = new long[pages.length * 2][];
+			System.arraycopy(pages, 0, bigger, 0, pages.length);
+			pages = bigger;
+		}
+		if (pages[p] == null) {
+			pages[p] = new long[entriesPerPage * stride];
+		}
+		return pages[p];
+	}
+
+	/**
+	 * Doubles the table, re-inserting entries using their stored hashes.
+	 */
+	private void grow() {
+		if (slots.length >= MAX_CAPACITY) {
+			if (size < slots.length - (slots.length >> 3)) {
+				return;
+			}
+			throw new IllegalStateException("Visited set is full.");
+		}
+		int[] bigger = new int[slots.length << 1];
+		int biggerMask = bigger.length - 1;
+		for (int index = 0; index < size; index++) {
+			int slot = spread(getHash(index)) & biggerMask;
+			while (bigger[slot] != 0) {
+				slot = (slot + 1) & biggerMask;
+			}
+			bigger[slot] = index + 1;
+		}
+		slots = bigger;
+		mask = biggerMask;
+	}
+
+	private static int spread(long hash) {
+		long h = hash * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}